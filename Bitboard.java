@@ -0,0 +1,113 @@
+class Bitboard {
+    /**
+     * The rows, columns and diagonals of the board, as masks of squares (bit 0 = square 1, … bit 8 = square 9).
+     */
+    static final int[] LINES = {
+            0b000_000_111, 0b000_111_000, 0b111_000_000, // rows
+            0b001_001_001, 0b010_010_010, 0b100_100_100, // columns
+            0b100_010_001, 0b001_010_100 // diagonals
+    };
+
+    /**
+     * Whether each of the 512 possible masks of one role's squares contains a complete line; see {@link #LINES}.
+     */
+    static final boolean[] WINS = new boolean[1 << 9];
+
+    static {
+        for (int mask = 0; mask < WINS.length; mask++) {
+            for (int line : LINES) {
+                if ((mask & line) == line) {
+                    WINS[mask] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The board character of each combination of an X bit (bit 0) and an O bit (bit 1) for a square.
+     */
+    static final byte[] SQUARE_BYTES = {' ', 'X', 'O', '?'};
+
+    short x = 0;
+    short o = 0;
+
+    /**
+     * Empties all squares.
+     */
+    void clear() {
+        x = 0;
+        o = 0;
+    }
+
+    /**
+     * @param square The square to check, 0-8.
+     * @return Whether the passed {@code square} is empty.
+     */
+    boolean isEmpty(int square) {
+        return ((x | o) & (1 << square)) == 0;
+    }
+
+    /**
+     * Marks the passed {@code square} for the passed {@code role}.
+     *
+     * @param role   The role playing the square, 'X' or 'O'.
+     * @param square The square to play, 0-8.
+     */
+    void play(char role, int square) {
+        if (role == 'X') {
+            x |= (short) (1 << square);
+        } else {
+            o |= (short) (1 << square);
+        }
+    }
+
+    /**
+     * @param role The role to check for the win, 'X' or 'O'.
+     * @return Whether the squares of the passed {@code role} contain a complete row, column or diagonal; a single
+     * lookup in {@link #WINS}.
+     */
+    boolean isWin(char role) {
+        return WINS[role == 'X' ? x : o];
+    }
+
+    /**
+     * @return Whether all squares are filled; a population count of both masks.
+     */
+    boolean isFull() {
+        return Integer.bitCount(x | o) == 9;
+    }
+
+    /**
+     * @return The board packed into 18 bits (X mask in the high 9 bits, O mask in the low 9 bits), for hashing and
+     * snapshots.
+     */
+    int pack() {
+        return x << 9 | o;
+    }
+
+    /**
+     * Replaces the board with a packed one; see {@link #pack()}.
+     *
+     * @param packed The board packed into 18 bits.
+     */
+    void unpack(int packed) {
+        x = (short) (packed >> 9 & 0x1FF);
+        o = (short) (packed & 0x1FF);
+    }
+
+    /**
+     * Populates the passed {@code byteArray} array with the board character bytes ('X', 'O' or ' ') of all 9
+     * squares, built from the X and O masks.
+     *
+     * @param byteArray Byte array to populate.
+     * @param offset    Integer to add to the byte array indices.
+     */
+    void populateBytes(byte[] byteArray, int offset) {
+        int xBits = x;
+        int oBits = o << 1;
+        for (int square = 0; square < 9; square++) {
+            byteArray[offset + square] = SQUARE_BYTES[(xBits >> square & 1) | (oBits >> square & 2)];
+        }
+    }
+}
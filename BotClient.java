@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+class BotClient extends ClientGame {
+    final int botId;
+    final Random random;
+
+    Socket socket = null;
+    InputStream in = null;
+    OutputStream out = null;
+
+    final ClientDecoder decoder = new ClientDecoder(this);
+
+    final char[] board = new char[9];
+    long moveTime = 0;
+
+    // the server to connect to next, once the server moved the bot to another server of the cluster (see
+    // Protocol#REDIRECT), or 0 if none; the bot goes back to the swarm's server after that connection
+    String redirectHost = null;
+    int redirectPort = 0;
+
+    /**
+     * A headless client that plays on its own, for load testing the server; see {@link BotSwarm}.
+     * <p>
+     * Reuses the message decoder of the interactive client ({@link ClientDecoder}), and overrides the game callbacks
+     * to answer the server instead of prompting for input.
+     *
+     * @param botId The number of the bot, also used as its random seed.
+     */
+    BotClient(int botId) {
+        this.botId = botId;
+        this.random = new Random(botId);
+    }
+
+    /**
+     * Connects to the server and plays until the connection is lost, reconnecting for as long as the swarm is
+     * running.
+     */
+    void run() {
+        while (BotSwarm.running) {
+            if (!connect()) {
+                BotSwarm.failures.increment();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            BotSwarm.connects.increment();
+            try {
+                while (BotSwarm.running && decoder.read(in)) {
+                    // keep playing
+                }
+            } catch (IOException e) {
+                // ignore
+            }
+            disconnect();
+        }
+    }
+
+    /**
+     * Initializes the bot socket (to the server the bot was moved to, if any; see {@link #redirected(String, int)}),
+     * resets the bot decoder and game state, and says hello in a later protocol version (asking for board deltas) if
+     * one was chosen; see {@link BotSwarm#protocolVersion}.
+     *
+     * @return Boolean indicating success.
+     */
+    boolean connect() {
+        String host = redirectPort != 0 ? redirectHost : BotSwarm.host;
+        int port = redirectPort != 0 ? redirectPort : BotSwarm.port;
+        redirectPort = 0;
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        } catch (IOException e) {
+            disconnect();
+            return false;
+        }
+        decoder.reset();
+        if (BotSwarm.protocolVersion > 1) {
+            byte[] hello = Protocol.hello(BotSwarm.protocolVersion);
+            byte[] deltas = Protocol.deltas(true);
+            sendMessage(ByteBuffer.allocate(hello.length + deltas.length).put(hello).put(deltas).array());
+        }
+        state = GameState.INITIALIZING;
+        role = ' ';
+        moveTime = 0;
+        return true;
+    }
+
+    /**
+     * Closes the bot socket.
+     */
+    void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            socket = null;
+        }
+    }
+
+    /**
+     * Sends a message to the server; a failure closes the socket, so the next read fails and the bot reconnects.
+     */
+    void sendMessage(byte[] bytes) {
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    /**
+     * Plays a random empty square, or the first empty square with the "first" strategy; see
+     * {@link BotSwarm#strategy}.
+     */
+    void playMove() {
+        int square;
+        if (BotSwarm.strategy.equals("first")) {
+            square = 0;
+            while (square < 8 && board[square] != ' ') {
+                square++;
+            }
+        } else {
+            do {
+                square = random.nextInt(9);
+            } while (board[square] != ' ');
+        }
+        moveTime = System.nanoTime();
+        sendMessage(Protocol.move(BotSwarm.protocolVersion, square + 1));
+    }
+
+    @Override
+    void messageReceived() {
+        // bots don't read input
+    }
+
+    @Override
+    void waitingForOpponent() {
+        state = GameState.WAITING_FOR_PLAYERS;
+    }
+
+    @Override
+    void inQueue(int ahead, boolean orMore) {
+        state = GameState.WAITING_FOR_PLAYERS;
+    }
+
+    @Override
+    void gameStarting(char role) {
+        state = GameState.INITIALIZING;
+
+        this.role = role;
+        Arrays.fill(board, ' ');
+    }
+
+    /**
+     * Records the latency from the bot's last move to this board, if the board is the answer to that move.
+     */
+    @Override
+    void boardStateChanged(char[] board) {
+        System.arraycopy(board, 0, this.board, 0, 9);
+        if (moveTime != 0) {
+            BotSwarm.latencies.record(System.nanoTime() - moveTime);
+            moveTime = 0;
+        }
+    }
+
+    /**
+     * Connects to the passed server next, as soon as the current connection is closed; see {@link #connect()}.
+     */
+    @Override
+    void redirected(String host, int port) {
+        BotSwarm.redirects.increment();
+        redirectHost = host;
+        redirectPort = port;
+    }
+
+    @Override
+    void boardOutOfSync() {
+        sendMessage(Protocol.resync());
+    }
+
+    @Override
+    void nextTurn(boolean yourTurn) {
+        state = GameState.PLAYING;
+
+        if (yourTurn) {
+            playMove();
+        }
+    }
+
+    @Override
+    void invalidMove() {
+        moveTime = 0;
+        playMove();
+    }
+
+    /**
+     * Counts the win and plays again with the probability given to the swarm; otherwise leaves, and reconnects to
+     * the back of the queue.
+     */
+    @Override
+    void gameWon(int streak) {
+        state = GameState.WAITING_ON_WINNER;
+
+        role = ' ';
+        BotSwarm.wins.increment();
+        sendMessage(Protocol.playAgain(BotSwarm.protocolVersion, random.nextDouble() < BotSwarm.playAgain));
+    }
+
+    @Override
+    void gameLost(boolean tie) {
+        state = GameState.WAITING_FOR_PLAYERS;
+
+        role = ' ';
+        if (tie) {
+            BotSwarm.ties.increment();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.LongAdder;
+
+class BotSwarm {
+    static String host = "127.0.0.1";
+    static int port = 9876;
+    static int botCount = 1000;
+    static int duration = 30;
+    static String strategy = "random";
+    static double playAgain = 0.5;
+    static int protocolVersion = Protocol.VERSION;
+
+    static volatile boolean running = true;
+
+    static final LongAdder connects = new LongAdder();
+    static final LongAdder failures = new LongAdder();
+    static final LongAdder redirects = new LongAdder();
+    static final LongAdder wins = new LongAdder();
+    static final LongAdder ties = new LongAdder();
+    static final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Starts a swarm of bots (see {@link BotClient}), each on its own virtual thread, that connect to the server and
+     * play complete games against each other.
+     * <p>
+     * Prints progress every second, and once the duration has passed, stops the bots and prints the connects and
+     * games per second along with the p50/p99/p999 latency from each move to the board that answers it.
+     *
+     * @param args Takes in a host as argument #1, which defaults to {@link #host}. Takes in a port number as
+     *             argument #2, which defaults to {@link #port}. Takes in a number of bots as argument #3, which
+     *             defaults to {@link #botCount}. Takes in a duration in seconds as argument #4, which defaults to
+     *             {@link #duration}. Takes in a move strategy as argument #5, "random" (default) or "first".
+     *             Takes in a protocol version (1 or 2) as argument #6, which defaults to {@link #protocolVersion};
+     *             see {@link Protocol#VERSION}.
+     */
+    public static void main(String[] args) {
+        if (args.length >= 1) {
+            host = args[0];
+        }
+        try {
+            if (args.length >= 2) {
+                port = Integer.parseInt(args[1]);
+            }
+            if (args.length >= 3) {
+                botCount = Integer.parseInt(args[2]);
+            }
+            if (args.length >= 4) {
+                duration = Integer.parseInt(args[3]);
+            }
+            if (args.length >= 6) {
+                protocolVersion = Integer.parseInt(args[5]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.printf("ERROR: Invalid number: %s\n", e.getMessage());
+            System.exit(-1);
+        }
+        if (args.length >= 5) {
+            strategy = args[4].toLowerCase();
+            if (!strategy.equals("random") && !strategy.equals("first")) {
+                System.out.printf("ERROR: Invalid strategy: %s\n", args[4]);
+                System.exit(-1);
+            }
+        }
+        if (protocolVersion < 1 || protocolVersion > Protocol.VERSION) {
+            System.out.printf("ERROR: Invalid protocol version: %d\n", protocolVersion);
+            System.exit(-1);
+        }
+
+        System.out.printf("Starting %d bots against %s:%d for %d seconds...\n", botCount, host, port, duration);
+        long startTime = System.nanoTime();
+        for (int botId = 0; botId < botCount; botId++) {
+            BotClient bot = new BotClient(botId);
+            Thread.ofVirtual().start(bot::run);
+        }
+
+        for (int second = 1; second <= duration; second++) {
+            try {
+                Thread.sleep(Math.max(0, startTime + second * 1_000_000_000L - System.nanoTime()) / 1_000_000);
+            } catch (InterruptedException e) {
+                break;
+            }
+            System.out.printf("%ds: %d connects, %d games, p50 %.3f ms\n", second, connects.sum(), getGames(),
+                    latencies.percentile(50) / 1e6);
+        }
+
+        running = false;
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("Connects: %d (%.1f/s), failed: %d, moved: %d\n", connects.sum(), connects.sum() / seconds,
+                failures.sum(), redirects.sum());
+        System.out.printf("Games: %d (%.1f/s), ties: %d\n", getGames(), getGames() / seconds, ties.sum() / 2);
+        System.out.printf("Move to board latency (%d moves): p50 %.3f ms, p99 %.3f ms, p999 %.3f ms\n",
+                latencies.count(), latencies.percentile(50) / 1e6, latencies.percentile(99) / 1e6,
+                latencies.percentile(99.9) / 1e6);
+        System.exit(0);
+    }
+
+    /**
+     * @return The number of games finished; each win is one game, and each tie is counted by both of its players.
+     */
+    static long getGames() {
+        return wins.sum() + ties.sum() / 2;
+    }
+}
@@ -2,32 +2,66 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 class Client {
     static String host = "127.0.0.1";
     static int port = 9876;
+    static String name = null;
+    static int protocolVersion = Protocol.VERSION;
+    static int watchRoom = 0;
+
+    // the server to reconnect to, once the server moves the client to another server of the cluster (see
+    // Protocol#REDIRECT), or 0 if none
+    static String redirectHost = null;
+    static int redirectPort = 0;
 
     static ClientState state = ClientState.CONNECTING;
     static Socket socket = null;
     static InputStream in = null;
     static OutputStream out = null;
 
+    static final int MAX_PENDING_INPUT = 16;
+
+    /**
+     * Guards the active prompt and the pending input, which are used by both the input thread (see
+     * {@link #startReadingInput()}) and the main thread, as messages from the server activate and cancel prompts.
+     */
+    static final ReentrantLock inputLock = new ReentrantLock();
     static Thread inputThread = null;
+    static String prompt = null;
+    static Callable<Boolean> promptCondition = null;
+    static Function<Byte, Boolean> promptAction = null;
+    static boolean promptShown = false;
+    static final ArrayDeque<Integer> pendingInput = new ArrayDeque<>();
 
     static ClientGame game = null;
+    static ClientDecoder decoder = null;
 
     /**
-     * Initializes the client, shutdown hook, client socket and client game state.
+     * Initializes the client, shutdown hook, client socket and client game state, says hello in a later protocol
+     * version if one was chosen and identifies the client as a player if a name was passed, in a single write; see
+     * {@link #handshake()}.
      * <p>
-     * Listens for messages from the server on the main thread indefinitely; see {@link #receiveMessage()}.
+     * Starts reading input (see {@link #startReadingInput()}) and listens for messages from the server on the main
+     * thread indefinitely (see {@link #receiveMessage()}), showing or cancelling the active prompt after each one;
+     * see {@link #resumeInput()}.
      * <p>
-     * Once a message fails to be received or is invalid, stops listening for messages and calls {@link #disconnect()}.
+     * Once a message fails to be received or is invalid, stops listening for messages and calls {@link #disconnect()},
+     * unless the server moved the client to another server of the cluster; see {@link #reconnect()}.
      *
      * @param args Takes in a host as argument #1, which defaults to {@link #host}. Takes in a port number as
-     *             argument #2, which defaults to {@link #port}.
+     *             argument #2, which defaults to {@link #port}. Takes in a player name as argument #3 (1 to 16
+     *             letters, digits, underscores or hyphens), under which the server keeps statistics and the
+     *             leaderboard, which defaults to {@link #name} (anonymous). Takes in a protocol version (1 or 2) as
+     *             argument #4, which defaults to {@link #protocolVersion}; see {@link Protocol#VERSION}. Takes in a
+     *             room number as argument #5, whose games are shown while waiting in the queue (protocol version 2
+     *             only), which defaults to {@link #watchRoom} (none); see {@link Protocol#WATCH}.
      */
     public static void main(String[] args) {
         clear();
@@ -43,6 +77,35 @@ class Client {
                 System.exit(-1);
             }
         }
+        if (args.length >= 3) {
+            name = args[2];
+            if (!name.matches("[A-Za-z0-9_-]{1,16}")) {
+                System.out.printf("ERROR: Invalid player name \"%s\"\n", args[2]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 4) {
+            try {
+                protocolVersion = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                protocolVersion = 0;
+            }
+            if (protocolVersion < 1 || protocolVersion > Protocol.VERSION) {
+                System.out.printf("ERROR: Invalid protocol version \"%s\"\n", args[3]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 5) {
+            try {
+                watchRoom = Integer.parseInt(args[4]);
+            } catch (NumberFormatException e) {
+                watchRoom = -1;
+            }
+            if (watchRoom < 0 || watchRoom > 255 || watchRoom > 0 && protocolVersion < 2) {
+                System.out.printf("ERROR: Invalid room number \"%s\"\n", args[4]);
+                System.exit(-1);
+            }
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(Client::disconnect));
 
@@ -54,9 +117,14 @@ class Client {
 
         System.out.print("Connected to server\n");
         game = new ClientGame();
-        while (receiveMessage()) {
-            Thread.yield();
-        }
+        decoder = new ClientDecoder(game);
+        handshake();
+        startReadingInput();
+        do {
+            while (receiveMessage()) {
+                resumeInput();
+            }
+        } while (reconnect());
         disconnect();
     }
 
@@ -69,60 +137,159 @@ class Client {
     }
 
     /**
-     * Runs a thread that waits for input from the client.
+     * Starts the thread that reads the client's input for as long as the client runs: it blocks on
+     * {@link InputStream#read()} until a line has been typed, then hands the first byte of the line to the active
+     * prompt, or keeps it for the next prompt if there is none; see {@link #inputReceived(int)}.
      * <p>
-     * Starts by calling {@link #stopReadingInput()} in case the client is already reading input.
-     * <p>
-     * I use a thread here so that we can wait for input in a non-blocking manner, so that the client can listen to
-     * messages while it waits on input.
-     * <p>
-     * Unfortunately, the way I currently do this will make it so that typed input doesn't display until the client
-     * submits it (by hitting enter) on Windows-based terminals; I either need to find a way around that, or just
-     * scrap this entirely.
-     *
-     * @param prompt    The input prompt.
-     * @param condition The condition (callable) by which to continue waiting for input.
-     * @param action    The action (function) to call once input has been obtained.
+     * Idle clients use no CPU, as both this thread and the main thread (see {@link #receiveMessage()}) block.
      */
-    static void readInput(String prompt, Callable<Boolean> condition, Function<Byte, Boolean> action) {
-        stopReadingInput();
-
+    static void startReadingInput() {
         inputThread = new Thread(() -> {
             try {
-                while (!inputThread.isInterrupted() && condition.call()) {
-                    System.in.read(new byte[System.in.available()]); // skip existing bytes
-                    System.out.print(prompt);
-                    while (System.in.available() < 1) { // wait for a byte to become available
-                        Thread.yield();
-                        if (inputThread.isInterrupted() || !condition.call()) {
-                            return;
-                        }
-                    }
-                    int input = System.in.read();
-                    System.in.read(new byte[System.in.available()]); // skip remaining bytes
-                    if (action.apply((byte) input)) {
-                        break;
+                int input;
+                while ((input = System.in.read()) != -1) {
+                    int nextByte = input;
+                    while (nextByte != '\n' && (nextByte = System.in.read()) != -1) {
+                        // skip the rest of the line
                     }
+                    inputReceived(input);
                 }
-            } catch (Exception e) {
+            } catch (IOException e) {
                 // ignore
             }
-        });
+        }, "Input");
+        inputThread.setDaemon(true);
         inputThread.start();
     }
 
     /**
-     * Interrupts the thread that is waiting for input and waits for that thread to die.
+     * Hands an input byte to the active prompt, showing the prompt again if the action did not accept it; if there
+     * is no active prompt, keeps the byte (unless the line was empty) for the next prompt, up to
+     * {@link #MAX_PENDING_INPUT} bytes, so input typed ahead is not lost.
+     *
+     * @param input The first byte of a line typed by the client.
      */
-    static void stopReadingInput() {
-        if (inputThread != null && inputThread.isAlive()) {
-            do {
-                if (!inputThread.isInterrupted()) {
-                    inputThread.interrupt();
+    static void inputReceived(int input) {
+        inputLock.lock();
+        try {
+            if (prompt == null || !isPromptActive()) {
+                prompt = null;
+                if (input != '\n' && input != '\r' && pendingInput.size() < MAX_PENDING_INPUT) {
+                    pendingInput.add(input);
+                }
+                return;
+            }
+            promptShown = false;
+            if (promptAction.apply((byte) input)) {
+                prompt = null;
+            } else {
+                showPrompt();
+            }
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Activates a prompt for input, replacing any active prompt: hands it any input typed ahead (see
+     * {@link #pendingInput}), then shows it if it still needs input.
+     * <p>
+     * The prompt stays active while the passed {@code condition} holds, and is cancelled by the first message after
+     * which it no longer does; see {@link #resumeInput()}.
+     *
+     * @param prompt    The input prompt.
+     * @param condition The condition (callable) by which to continue waiting for input.
+     * @param action    The action (function) to call once input has been obtained; returns whether the input was
+     *                  accepted.
+     */
+    static void readInput(String prompt, Callable<Boolean> condition, Function<Byte, Boolean> action) {
+        inputLock.lock();
+        try {
+            Client.prompt = prompt;
+            promptCondition = condition;
+            promptAction = action;
+            promptShown = false;
+            while (Client.prompt != null && !pendingInput.isEmpty()) {
+                int input = pendingInput.poll();
+                System.out.print(prompt + (char) input + '\n');
+                if (action.apply((byte) input)) {
+                    Client.prompt = null;
                 }
-                Thread.yield();
-            } while (inputThread.isAlive());
-            System.out.print('\n');
+            }
+            if (Client.prompt != null) {
+                showPrompt();
+            }
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Ends the prompt line of the active prompt (if it is shown) before a message from the server is output.
+     */
+    static void suspendInput() {
+        inputLock.lock();
+        try {
+            if (promptShown) {
+                System.out.print('\n');
+                promptShown = false;
+            }
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Once a message from the server has been handled, cancels the active prompt if its condition no longer holds
+     * (the game state moved on), or otherwise shows it again.
+     */
+    static void resumeInput() {
+        inputLock.lock();
+        try {
+            if (prompt == null) {
+                return;
+            }
+            if (!isPromptActive()) {
+                prompt = null;
+            } else if (!promptShown) {
+                showPrompt();
+            }
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the active prompt, ending its prompt line if it is shown.
+     */
+    static void stopReadingInput() {
+        inputLock.lock();
+        try {
+            suspendInput();
+            prompt = null;
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Shows the prompt of the active prompt. Must be called while holding {@link #inputLock}.
+     */
+    static void showPrompt() {
+        System.out.print(prompt);
+        promptShown = true;
+    }
+
+    /**
+     * Must be called while holding {@link #inputLock}.
+     *
+     * @return Whether the condition of the active prompt holds.
+     */
+    static boolean isPromptActive() {
+        try {
+            return promptCondition.call();
+        } catch (Exception e) {
+            return false;
         }
     }
 
@@ -147,10 +314,55 @@ class Client {
         return true;
     }
 
+    /**
+     * Disconnects and connects to the server the client was moved to (see {@link Protocol#REDIRECT}), if any, with a
+     * fresh decoder state and the same handshake; see {@link #handshake()}.
+     *
+     * @return Boolean indicating whether the client reconnected.
+     */
+    static boolean reconnect() {
+        if (redirectPort == 0) {
+            return false;
+        }
+        disconnect();
+        host = redirectHost;
+        port = redirectPort;
+        redirectPort = 0;
+
+        System.out.printf("Connecting to server at %s:%d...\n", host, port);
+        if (!connect()) {
+            System.out.print("ERROR: Failed to connect to server\n");
+            return false;
+        }
+        System.out.print("Connected to server\n");
+        decoder.reset();
+        handshake();
+        return true;
+    }
+
+    /**
+     * Sends the hello and the request for board deltas (if a protocol version later than 1 was chosen; see
+     * {@link Protocol#hello(int)} and {@link Protocol#deltas(boolean)}), the identify message (if a player name was
+     * passed; see {@link Protocol#identify(String)}) and the request to watch a room (if one was passed; see
+     * {@link Protocol#watch(int)}) together, in a single write. Messages sent after the hello
+     * are in the chosen version; messages received are switched over by the server's answer to it (see
+     * {@link ClientDecoder}).
+     */
+    static void handshake() {
+        byte[] hello = protocolVersion > 1 ? Protocol.hello(protocolVersion) : new byte[0];
+        byte[] deltas = protocolVersion > 1 ? Protocol.deltas(true) : new byte[0];
+        byte[] identify = name != null ? Protocol.identify(name) : new byte[0];
+        byte[] watch = watchRoom > 0 ? Protocol.watch(watchRoom) : new byte[0];
+        int length = hello.length + deltas.length + identify.length + watch.length;
+        if (length > 0) {
+            sendMessage(ByteBuffer.allocate(length).put(hello).put(deltas).put(identify).put(watch).array());
+        }
+    }
+
     /**
      * Closes the client socket and its input and output streams.
      * <p>
-     * Calls {@link #stopReadingInput()} to interrupt input before disconnecting.
+     * Calls {@link #stopReadingInput()} to cancel the active prompt before disconnecting.
      */
     static void disconnect() {
         if (state == ClientState.DISCONNECTING || state == ClientState.DISCONNECTED) {
@@ -193,113 +405,18 @@ class Client {
     }
 
     /**
-     * Waits for a byte from the server by calling {@link InputStream#read()}, then parses the received byte(s) and
-     * updates the client/game state accordingly.
-     * <p>
-     * Starts by calling {@link #stopReadingInput()} in case the client is reading input.
+     * Waits for bytes from the server, then decodes every message that has fully arrived with a single read (see
+     * {@link MessageDecoder#read(InputStream)}) and updates the client/game state accordingly; see
+     * {@link ClientDecoder}.
      *
      * @return Boolean indicating success.
      */
     static boolean receiveMessage() {
         try {
-            int nextByte;
-            if ((nextByte = in.read()) == -1) {
-                return false;
-            }
-
-            stopReadingInput();
-
-            // Waiting for another player to join the game
-            // `w` (lowercase)
-            // Only sent if there is not yet a second player
-            // IF second player arrives, send "game starting" message
-            if (nextByte == 'w') {
-                game.waitingForOpponent();
-                return true;
-            }
-
-            // Game starting
-            // `x` – Game starting, you are X
-            // `o` – Game starting, you are O
-            // Indicate for each player if they are `X` or `O`
-            if (nextByte == 'x' || nextByte == 'o') {
-                char role = Character.toUpperCase((char) nextByte);
-                game.gameStarting(role);
-                return true;
-            }
-
-            // How many people before the player in the queue
-            // `Q` followed by byte with value 0…254
-            // 255 = lots (255 or more) players ahead of you
-            if (nextByte == 'Q') {
-                if ((nextByte = in.read()) == -1) {
-                    return false;
-                }
-                game.inQueue(nextByte);
-                return true;
-            }
-
-            // Current state of the board
-            // String – each of 9 characters represents one square on the board (`X`, `O` or ` `)
-            // Always sent "square 1", "square 2", …, "square 9"
-            if (nextByte == 'X' || nextByte == 'O' || nextByte == ' ') {
-                char[] board = new char[9];
-                int square = 0;
-                boolean eof = false;
-                do {
-                    board[square] = (char) nextByte;
-                } while (++square < 9 && !(eof = ((nextByte = in.read()) == -1)));
-                if (eof) {
-                    return false;
-                }
-                game.boardStateChanged(board);
-                return true;
-            }
-
-            // Indicate who plays next
-            // Boolean – `1` = your turn, `0` = other player`s turn
-            boolean yourTurn = nextByte == 1;
-            if (yourTurn || nextByte == 0) {
-                game.nextTurn(yourTurn);
-                return true;
-            }
-
-            // Incorrect move
-            // `I`
-            // Only sent if move is incorrect
-            // If correct, message with board and indicating other player`s move
-            if (nextByte == 'I') {
-                game.invalidMove();
-                return true;
-            }
-
-            // You won/lost/tied
-            // `W` = win (followed by byte with length of win streak)
-            // `L` = loss
-            // `T` = tie
-            if (nextByte == 'W') {
-                // Indicate winning streak to winner
-                // Send at end of each game to winner
-                // Number – indicates length of the streak
-                // In binary, one byte of 1..255
-                // Streaks longer than 255 will be reported as 255
-                if ((nextByte = in.read()) == -1) {
-                    return false;
-                }
-                game.gameWon(nextByte);
-                return true;
-            }
-            boolean tie = nextByte == 'T';
-            if (tie || nextByte == 'L') {
-                game.gameLost(tie);
-                return true;
-            }
-
-            System.out.printf("ERROR: Received unrecognized byte from server: %s\n", nextByte);
+            return decoder.read(in);
         } catch (IOException e) {
-            // ignore
+            return false;
         }
-        return false;
     }
 
     /**
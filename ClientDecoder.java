@@ -0,0 +1,236 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class ClientDecoder extends MessageDecoder {
+    final ClientGame game;
+
+    // the protocol version of the messages received; switched by the server's answer to the client's hello, see
+    // Protocol#VERSION
+    int version = 1;
+
+    // the board as last received, patched by deltas; see Protocol#DELTA
+    final char[] board = new char[9];
+    boolean hasBoard = false;
+
+    /**
+     * Decodes the messages a client receives from the server into calls on the passed {@code game}; see
+     * {@link #handleFrame(ByteBuffer, int, int)}.
+     *
+     * @param game The game state to update.
+     */
+    ClientDecoder(ClientGame game) {
+        this.game = game;
+    }
+
+    /**
+     * Forgets the protocol version, board and any partly received message, for a new connection.
+     */
+    void reset() {
+        buffer.clear();
+        version = 1;
+        hasBoard = false;
+    }
+
+    @Override
+    int frameLength(ByteBuffer frames) {
+        int firstByte = frames.get(frames.position());
+        if (version == 2 || firstByte == Protocol.HELLO) { // the answer to a hello is already a version 2 frame
+            return frames.remaining() < 2 ? 0 : 2 + (frames.get(frames.position() + 1) & 0xFF);
+        }
+
+        int length = Protocol.serverMessageLength(firstByte);
+        if (length == -1) {
+            System.out.printf("ERROR: Received unrecognized byte from server: %s\n", firstByte & 0xFF);
+        }
+        return length;
+    }
+
+    /**
+     * Calls {@link ClientGame#messageReceived()}, then updates the game state according to the message.
+     */
+    @Override
+    boolean handleFrame(ByteBuffer frames, int offset, int length) {
+        int firstByte = frames.get(offset);
+        if (version == 2 || firstByte == Protocol.HELLO) {
+            return handleFrameVersion2(frames, offset, length);
+        }
+
+        game.messageReceived();
+        switch (firstByte) {
+            // Waiting for another player to join the game
+            // `w` (lowercase)
+            // Only sent if there is not yet a second player
+            // IF second player arrives, send "game starting" message
+            case 'w' -> game.waitingForOpponent();
+
+            // Game starting
+            // `x` – Game starting, you are X
+            // `o` – Game starting, you are O
+            // Indicate for each player if they are `X` or `O`
+            case 'x', 'o' -> game.gameStarting(Character.toUpperCase((char) firstByte));
+
+            // How many people before the player in the queue
+            // `Q` followed by byte with value 0…254
+            // 255 = lots (255 or more) players ahead of you
+            case 'Q' -> {
+                int ahead = frames.get(offset + 1) & 0xFF;
+                game.inQueue(ahead, ahead == 255);
+            }
+
+            // Current state of the board
+            // String – each of 9 characters represents one square on the board (`X`, `O` or ` `)
+            // Always sent "square 1", "square 2", …, "square 9"
+            case 'X', 'O', ' ' -> boardReceived(frames, offset);
+
+            // Indicate who plays next
+            // Boolean – `1` = your turn, `0` = other player`s turn
+            case 0, 1 -> game.nextTurn(firstByte == 1);
+
+            // Incorrect move
+            // `I`
+            // Only sent if move is incorrect
+            // If correct, message with board and indicating other player`s move
+            case 'I' -> game.invalidMove();
+
+            // You won/lost/tied
+            // `W` = win (followed by byte with length of win streak)
+            // `L` = loss
+            // `T` = tie
+            // Indicate winning streak to winner
+            // Send at end of each game to winner
+            // Number – indicates length of the streak
+            // In binary, one byte of 1..255
+            // Streaks longer than 255 will be reported as 255
+            case 'W' -> game.gameWon(frames.get(offset + 1) & 0xFF);
+            case 'L', 'T' -> game.gameLost(firstByte == 'T');
+        }
+        return true;
+    }
+
+    /**
+     * Calls {@link ClientGame#messageReceived()}, then updates the game state according to a protocol version 2
+     * frame: a type byte, a payload length byte and the payload; see {@link Protocol#VERSION}. Frames of unknown
+     * types are skipped.
+     *
+     * @param frames The frames to decode.
+     * @param offset The index of the first byte of the frame.
+     * @param length The length of the frame.
+     * @return Boolean indicating success.
+     */
+    boolean handleFrameVersion2(ByteBuffer frames, int offset, int length) {
+        int type = frames.get(offset);
+        int payloadLength = length - 2;
+        int payload = payloadLength >= 1 ? frames.get(offset + 2) & 0xFF : -1;
+        if (type == Protocol.HELLO) {
+            version = payload;
+            return true;
+        }
+        if (type == Protocol.DELTAS) {
+            return true; // deltas are told apart from full boards by their type, so the answer changes nothing here
+        }
+        if (type == Protocol.REDIRECT) {
+            if (payloadLength < 3) {
+                System.out.printf("ERROR: Received invalid redirect from server: %d bytes\n", payloadLength);
+                return false;
+            }
+            byte[] host = new byte[payloadLength - 2];
+            frames.get(offset + 4, host);
+            game.redirected(new String(host, StandardCharsets.US_ASCII), payload << 8 | frames.get(offset + 3) & 0xFF);
+            return false; // stops reading from this server; the client reconnects to the other one
+        }
+
+        boolean needsPayload = type == Protocol.STARTING || type == Protocol.QUEUE || type == Protocol.TURN
+                || type == Protocol.WON || type == Protocol.DELTA || type == Protocol.WATCHING;
+        if (needsPayload && payloadLength < 1) {
+            System.out.printf("ERROR: Received message without payload from server: %s\n", type & 0xFF);
+            return false;
+        }
+
+        game.messageReceived();
+        switch (type) {
+            case Protocol.WAITING -> game.waitingForOpponent();
+            case Protocol.STARTING -> game.gameStarting((char) payload);
+            case Protocol.QUEUE -> {
+                if (payloadLength > 4) {
+                    System.out.printf("ERROR: Received invalid queue position from server: %d bytes\n", payloadLength);
+                    return false;
+                }
+                int ahead = 0;
+                for (int index = 0; index < payloadLength; index++) {
+                    ahead = ahead << 8 | frames.get(offset + 2 + index) & 0xFF;
+                }
+                game.inQueue(ahead, false);
+            }
+            case Protocol.BOARD -> {
+                if (payloadLength != 9) {
+                    System.out.printf("ERROR: Received invalid board from server: %d bytes\n", payloadLength);
+                    return false;
+                }
+                boardReceived(frames, offset + 2);
+            }
+            case Protocol.DELTA -> deltaReceived(payload);
+            case Protocol.WATCHING -> game.watching(payload);
+            case Protocol.GAME -> {
+                if (payloadLength != 11) {
+                    System.out.printf("ERROR: Received invalid room state from server: %d bytes\n", payloadLength);
+                    return false;
+                }
+                char[] board = new char[9];
+                for (int square = 0; square < 9; square++) {
+                    board[square] = (char) frames.get(offset + 3 + square);
+                }
+                game.gameWatched(payload, board, (char) frames.get(offset + 12));
+            }
+            case Protocol.TURN -> game.nextTurn(payload == 1);
+            case Protocol.INVALID -> game.invalidMove();
+            case Protocol.WON -> game.gameWon(payload);
+            case Protocol.LOST, Protocol.TIED -> game.gameLost(type == Protocol.TIED);
+            default -> {
+                // a message type added after this client was built
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the board with the one at the passed {@code offset}, and passes it on to
+     * {@link ClientGame#boardStateChanged(char[])}.
+     *
+     * @param frames The frames to decode.
+     * @param offset The index of the first square of the board.
+     */
+    void boardReceived(ByteBuffer frames, int offset) {
+        for (int square = 0; square < 9; square++) {
+            board[square] = (char) frames.get(offset + square);
+        }
+        hasBoard = true;
+        game.boardStateChanged(board.clone());
+    }
+
+    /**
+     * Patches the board with a delta and passes it on to {@link ClientGame#boardStateChanged(char[])}, followed by
+     * {@link ClientGame#nextTurn(boolean)} if the delta has the turn folded in; see {@link Protocol#DELTA}.
+     * <p>
+     * A delta that does not fit the board (marking a square that is not empty) means the board has drifted from the
+     * server's; the delta is dropped, and the board is asked for in full (see {@link ClientGame#boardOutOfSync()}).
+     * Further deltas are dropped until it arrives.
+     *
+     * @param delta The payload of the delta.
+     */
+    void deltaReceived(int delta) {
+        int square = delta & 0xF;
+        if (!hasBoard || square > 8 || board[square] != ' ') {
+            if (hasBoard) {
+                hasBoard = false;
+                game.boardOutOfSync();
+            }
+            return;
+        }
+
+        board[square] = (delta & Protocol.DELTA_O) != 0 ? 'O' : 'X';
+        game.boardStateChanged(board.clone());
+        if ((delta & Protocol.DELTA_TURN) != 0) {
+            game.nextTurn((delta & Protocol.DELTA_YOUR_TURN) != 0);
+        }
+    }
+}
@@ -5,6 +5,17 @@ class ClientGame {
     GameState state = GameState.INITIALIZING;
     char role = ' ';
 
+    /**
+     * Called when a message from the server starts arriving, before it is parsed.
+     * <p>
+     * Calls {@link Client#suspendInput()} in case the client is reading input, so the message is not output on the
+     * prompt line; the prompt is shown again or cancelled once the message has been handled (see
+     * {@link Client#resumeInput()}).
+     */
+    void messageReceived() {
+        Client.suspendInput();
+    }
+
     /**
      * Updates the client/game state and outputs to the client that they're waiting for another player.
      */
@@ -16,13 +27,18 @@ class ClientGame {
 
     /**
      * Updates the client/game state and outputs to the client their position in the queue.
+     *
+     * @param ahead  The number of clients ahead in the queue.
+     * @param orMore Whether there may be more clients ahead, as protocol version 1 caps the position at 255.
      */
-    void inQueue(int ahead) {
+    void inQueue(int ahead, boolean orMore) {
         state = GameState.WAITING_FOR_PLAYERS;
 
         String output = "You are in a queue to play. ";
         if (ahead == 0) {
             output += "You are next in line.";
+        } else if (orMore) {
+            output += "There are " + ahead + " or more clients ahead of you.";
         } else {
             output += "There " + (ahead == 1 ? "is 1 client" : "are " + ahead + " clients") + " ahead of you.";
         }
@@ -40,9 +56,51 @@ class ClientGame {
     }
 
     /**
-     * Outputs the current state of the board to the client.
+     * Outputs the current state of the board to the client; see {@link #printBoard(char[])}.
      */
     void boardStateChanged(char[] board) {
+        printBoard(board);
+    }
+
+    /**
+     * Outputs to the client which room they are watching while they wait in the queue, if any.
+     *
+     * @param room The room being watched, or 0 if none.
+     */
+    void watching(int room) {
+        if (room == 0) {
+            System.out.print("You are not watching a room.\n");
+        } else {
+            System.out.printf("You are watching room %d while you wait.\n", room);
+        }
+    }
+
+    /**
+     * Outputs the state of the room the client is watching while they wait in the queue; see
+     * {@link Protocol#GAME}.
+     *
+     * @param room  The room being watched.
+     * @param board The board of the room.
+     * @param state `x` or `o` if it is that role's turn, `X` or `O` if that role won, `T` if the game was tied, or
+     *              ` ` if no game was played yet.
+     */
+    void gameWatched(int room, char[] board, char state) {
+        String output = switch (state) {
+            case 'x', 'o' -> "%c to play".formatted(Character.toUpperCase(state));
+            case 'X', 'O' -> "%c won".formatted(state);
+            case 'T' -> "tied";
+            default -> "waiting for players";
+        };
+        System.out.printf("Room %d, %s:\n", room, output);
+        printBoard(board);
+    }
+
+    /**
+     * Outputs the passed {@code board} to the client, one row per line, with `_` for empty squares.
+     *
+     * @param board The board to output.
+     */
+    static void printBoard(char[] board) {
         System.out.printf("%c %c %c\n", board[0] == ' ' ? '_' : board[0], board[1] == ' ' ? '_' : board[1],
                 board[2] == ' ' ? '_' : board[2]);
         System.out.printf("%c %c %c\n", board[3] == ' ' ? '_' : board[3], board[4] == ' ' ? '_' : board[4],
@@ -51,6 +109,27 @@ class ClientGame {
                 board[8] == ' ' ? '_' : board[8]);
     }
 
+    /**
+     * Outputs to the client that they are being moved to another server of the cluster, and has them reconnect to it
+     * once the connection to this one is closed; see {@link Client#reconnect()}.
+     *
+     * @param host The host of the server to move to.
+     * @param port The port of the server to move to.
+     */
+    void redirected(String host, int port) {
+        System.out.printf("Moving to another server at %s:%d...\n", host, port);
+        Client.redirectHost = host;
+        Client.redirectPort = port;
+    }
+
+    /**
+     * Asks the server for the board in full, after a board delta did not fit the board; see
+     * {@link ClientDecoder#deltaReceived(int)}.
+     */
+    void boardOutOfSync() {
+        Client.sendMessage(Protocol.resync());
+    }
+
     /**
      * Updates the client/game state and outputs to the player whose turn it is and what role they play.
      * <p>
@@ -72,7 +151,8 @@ class ClientGame {
             Client.readInput("What square do you want to play (1-9)? ",
                     () -> Client.state == ClientState.CONNECTED && state == GameState.PLAYING, inputByte -> {
                 if (inputByte >= 49 && inputByte <= 57) { // decimal values for ASCII number characters 1-9
-                    Client.sendMessage(new byte[]{(byte) (inputByte - 48)}); // subtract 48 to convert to integer
+                    // subtract 48 to convert to integer
+                    Client.sendMessage(Protocol.move(Client.protocolVersion, inputByte - 48));
                     return true;
                 }
                 return false;
@@ -113,7 +193,7 @@ class ClientGame {
                 () -> Client.state == ClientState.CONNECTED && state == GameState.WAITING_ON_WINNER, inputByte -> {
             char choice = Character.toUpperCase((char) inputByte.byteValue());
             if (choice == 'Y' || choice == 'N') {
-                Client.sendMessage(new byte[]{(byte) choice});
+                Client.sendMessage(Protocol.playAgain(Client.protocolVersion, choice == 'Y'));
                 return true;
             }
             return false;
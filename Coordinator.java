@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+class Coordinator {
+    static int port = 9875;
+    static LogLevel logLevel = LogLevel.INFO;
+
+    static ServerSocket serverSocket = null;
+
+    /**
+     * The servers in the cluster, in the order they joined; guarded by {@link #lock}.
+     */
+    static final ArrayList<CoordinatorNode> nodes = new ArrayList<>();
+    static final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Starts the cluster coordinator: servers started with its address (see {@link Server#coordinator}) register
+     * with it and report their load, and it pairs clients waiting alone on one server with clients waiting on
+     * another by moving one of them over; see {@link #balance()}.
+     * <p>
+     * Listens for server connections on the main thread indefinitely, and reads and writes each server's messages on
+     * threads of its own; see {@link CoordinatorNode#run()}.
+     *
+     * @param args Takes in a port number as argument #1, which defaults to {@link #port}. Takes in a log level
+     *             ({@code debug}, {@code info}, {@code warning} or {@code error}) as argument #2, which defaults to
+     *             {@link #logLevel}; see {@link ServerLog}.
+     * @throws IOException From the {@link ServerSocket#ServerSocket(int)} constructor.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.printf("ERROR: Invalid port number \"%s\"\n", args[0]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 2) {
+            try {
+                logLevel = LogLevel.valueOf(args[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.printf("ERROR: Invalid log level \"%s\"\n", args[1]);
+                System.exit(-1);
+            }
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(ServerLog::shutdown));
+
+        serverSocket = new ServerSocket(port);
+        ServerLog.level = logLevel;
+        ServerLog.log(LogLevel.INFO, "Coordinator started on port %d", port);
+        while (true) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                CoordinatorNode node = new CoordinatorNode(socket);
+                new Thread(node::run).start();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Adds a server that registered the port it takes clients on to the cluster.
+     *
+     * @param node The server joining.
+     */
+    static void join(CoordinatorNode node) {
+        lock.lock();
+        try {
+            node.nodeId = ++CoordinatorNode.lastNodeId;
+            nodes.add(node);
+            ServerLog.log(LogLevel.INFO, "%s joined the cluster", node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a server whose connection was lost from the cluster.
+     *
+     * @param node The server leaving.
+     */
+    static void leave(CoordinatorNode node) {
+        lock.lock();
+        try {
+            nodes.remove(node);
+            ServerLog.log(LogLevel.INFO, "%s left the cluster", node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the load reported by a server (see {@link Protocol#LOAD}), then pairs up waiting clients across the
+     * cluster; see {@link #balance()}.
+     *
+     * @param node   The server reporting.
+     * @param alone  The number of clients waiting alone for an opponent on the server.
+     * @param queued The number of queued clients on the server that can be moved.
+     */
+    static void loadReceived(CoordinatorNode node, int alone, int queued) {
+        lock.lock();
+        try {
+            node.alone = alone;
+            node.queued = queued;
+            if (ServerLog.isEnabled(LogLevel.DEBUG)) {
+                int clusterAlone = 0;
+                int clusterQueued = 0;
+                for (CoordinatorNode other : nodes) {
+                    clusterAlone += other.alone;
+                    clusterQueued += other.queued;
+                }
+                ServerLog.log(LogLevel.DEBUG, "%s: %d waiting alone, %d queued (cluster: %s)", node, alone, queued,
+                        "%d waiting alone, %d queued".formatted(clusterAlone, clusterQueued));
+            }
+            balance();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * For every server with a client waiting alone for an opponent, in the order the servers joined, finds another
+     * server to send it a client ({@link Protocol#TRANSFER}): preferably one with clients queued (who would otherwise
+     * wait for a free room), otherwise a later server with a client waiting alone too, so two servers never send
+     * their clients to each other. Transfers are counted against both servers' load until they next report it.
+     * Servers whose connection was closed are passed over; see {@link CoordinatorNode#closed}.
+     * <p>
+     * Only called while holding {@link #lock}; the transfers are only queued here, and written to the servers by
+     * their own writer threads (see {@link CoordinatorNode#send(byte[])}), so a server that stops reading never
+     * holds up the rest of the cluster.
+     */
+    static void balance() {
+        for (CoordinatorNode target : nodes) {
+            while (target.alone > 0 && !target.closed) {
+                CoordinatorNode donor = findDonor(target);
+                if (donor == null) {
+                    break;
+                }
+                donor.send(Protocol.address(Protocol.TRANSFER, target.host, target.port));
+                ServerLog.log(LogLevel.INFO, "Moving a %s client from %s to %s",
+                        donor.queued > 0 ? "queued" : "lone", donor, target);
+                target.alone--;
+                if (donor.queued > 0) {
+                    donor.queued--;
+                } else {
+                    donor.alone--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Only called while holding {@link #lock}.
+     *
+     * @param target The server with a client waiting alone.
+     * @return The server to send the passed {@code target} a client; see {@link #balance()}. Or {@code null} if none.
+     */
+    static CoordinatorNode findDonor(CoordinatorNode target) {
+        for (CoordinatorNode node : nodes) {
+            if (node != target && node.queued > 0 && !node.closed) {
+                return node;
+            }
+        }
+        for (int index = nodes.indexOf(target) + 1; index < nodes.size(); index++) {
+            CoordinatorNode node = nodes.get(index);
+            if (node.alone > 0 && !node.closed) {
+                return node;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class CoordinatorNode {
+    // how long a write to a server may stay stuck in its socket before the server is disconnected; see send(byte[])
+    static final long WRITE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    static int lastNodeId = 0;
+    int nodeId;
+
+    final Socket socket;
+    OutputStream out;
+
+    // the messages not yet written to the server, and when the writer thread started writing the one it is writing
+    // (0 while it waits for one); see writeMessages()
+    final LinkedBlockingQueue<byte[]> outgoing = new LinkedBlockingQueue<>();
+    volatile long writeSince = 0;
+    Thread writer;
+
+    // whether the connection to the server was closed; the server is no longer sent clients or asked for them, even
+    // before it has left the cluster, see Coordinator#balance()
+    volatile boolean closed = false;
+
+    // the address clients are moved to, known once the server registers: the host the server sends, or else the
+    // address it connects from; see Protocol#NODE
+    String host;
+    int port = 0;
+
+    // the load last reported by the server, less the transfers counted on since; only used while holding
+    // Coordinator#lock, see Coordinator#balance()
+    int alone = 0;
+    int queued = 0;
+
+    /**
+     * A server of the cluster, as seen by the coordinator; see {@link Coordinator}.
+     *
+     * @param socket Socket to associate with the server.
+     */
+    CoordinatorNode(Socket socket) {
+        this.socket = socket;
+        this.host = socket.getInetAddress().getHostAddress();
+    }
+
+    /**
+     * Reads messages from the server until the connection is lost, then removes the server from the cluster; see
+     * {@link Coordinator#leave(CoordinatorNode)}. Messages of unknown types are skipped. A server whose host does not
+     * fit in an address message (see {@link Protocol#MAX_HOST_LENGTH}) is turned away when it registers.
+     * <p>
+     * Messages to the server are written by a thread of its own; see {@link #writeMessages()}.
+     */
+    void run() {
+        try {
+            out = socket.getOutputStream();
+            writer = new Thread(this::writeMessages);
+            writer.start();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (true) {
+                int type = in.readUnsignedByte();
+                byte[] payload = new byte[in.readUnsignedByte()];
+                in.readFully(payload);
+                if (type == Protocol.NODE && payload.length >= 2 && port == 0) {
+                    if (payload.length > 2) {
+                        host = new String(payload, 2, payload.length - 2, StandardCharsets.US_ASCII);
+                    }
+                    if (host.length() > Protocol.MAX_HOST_LENGTH) {
+                        ServerLog.log(LogLevel.WARNING, "Turned away a server with a host longer than %d bytes: %s",
+                                Protocol.MAX_HOST_LENGTH, host);
+                        break;
+                    }
+                    port = (payload[0] & 0xFF) << 8 | payload[1] & 0xFF;
+                    Coordinator.join(this);
+                } else if (type == Protocol.LOAD && payload.length >= 4 && port != 0) {
+                    Coordinator.loadReceived(this, (payload[0] & 0xFF) << 8 | payload[1] & 0xFF,
+                            (payload[2] & 0xFF) << 8 | payload[3] & 0xFF);
+                }
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+
+        close();
+        if (writer != null) {
+            writer.interrupt();
+        }
+        if (port != 0) {
+            Coordinator.leave(this);
+        }
+    }
+
+    /**
+     * Queues a message to be sent to the server by its writer thread (see {@link #writeMessages()}); never blocks, as
+     * it is called while holding {@link Coordinator#lock}.
+     * <p>
+     * A server whose last write has been stuck in the socket for longer than {@link #WRITE_TIMEOUT} has stopped
+     * reading its messages: its socket is closed instead, so the next read fails and the server leaves the cluster.
+     *
+     * @param bytes The message to send.
+     */
+    void send(byte[] bytes) {
+        if (closed) {
+            return;
+        }
+        long since = writeSince;
+        if (since != 0 && System.nanoTime() - since > WRITE_TIMEOUT) {
+            ServerLog.log(LogLevel.WARNING, "%s stopped reading its messages, disconnecting", this);
+            close();
+            return;
+        }
+        outgoing.add(bytes);
+    }
+
+    /**
+     * Writes the messages queued for the server (see {@link #send(byte[])}) in order, until the connection is lost;
+     * runs on the server's writer thread, so a server that stops reading never holds up the coordinator.
+     */
+    void writeMessages() {
+        try {
+            while (true) {
+                byte[] bytes = outgoing.take();
+                writeSince = System.nanoTime();
+                out.write(bytes);
+                writeSince = 0;
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection to the server, which ends both its reader and writer threads.
+     */
+    void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Node #%d (%s:%d)".formatted(nodeId, host, port);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+    /**
+     * Log-linear buckets (like HdrHistogram): values below {@link #SUB_BUCKETS} get a bucket each, and every power of
+     * two above that is split into {@link #SUB_BUCKETS} equal buckets, so any recorded value is off by at most ~3%.
+     * <p>
+     * The buckets are striped: every thread records into one of several copies (picked by thread ID), so threads
+     * recording the same value at once rarely contend on the same counter, and reads add the copies up.
+     */
+    final AtomicLongArray[] stripes;
+
+    /**
+     * Creates a histogram with one stripe per CPU core (rounded up to a power of two).
+     */
+    LatencyHistogram() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        stripes = new AtomicLongArray[Integer.highestOneBit(Math.max(1, cores * 2 - 1))];
+        for (int index = 0; index < stripes.length; index++) {
+            stripes[index] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * Records a value; safe to call from any number of threads at once.
+     *
+     * @param value The value to record (e.g. a latency in nanoseconds); negative values are recorded as 0.
+     */
+    void record(long value) {
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().threadId() & (stripes.length - 1)];
+        stripe.incrementAndGet(bucket(Math.max(0, value)));
+    }
+
+    /**
+     * @param bucket The index of the bucket.
+     * @return The number of values recorded in the passed {@code bucket}, over all stripes.
+     */
+    long get(int bucket) {
+        long count = 0;
+        for (AtomicLongArray stripe : stripes) {
+            count += stripe.get(bucket);
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    long count() {
+        long count = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            count += get(index);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile The percentile to look up, 0-100.
+     * @return The (lower bound of the bucket of the) value at the passed {@code percentile}, or 0 if nothing was
+     * recorded.
+     */
+    long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += get(index);
+            if (seen >= rank) {
+                return value(index);
+            }
+        }
+        return value(BUCKETS - 1);
+    }
+
+    /**
+     * @param value The value to find the bucket of.
+     * @return The index of the bucket the passed {@code value} is counted in.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * @param bucket The index of the bucket.
+     * @return The lowest value counted in the passed {@code bucket}.
+     */
+    static long value(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket & (SUB_BUCKETS - 1);
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
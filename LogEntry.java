@@ -0,0 +1,43 @@
+class LogEntry {
+    /**
+     * The sequence number of the entry's slot in the ring buffer of {@link ServerLog}: the next ticket that may write
+     * the slot, plus one once that ticket has written it and the writer thread may read it.
+     */
+    volatile long sequence;
+
+    long time;
+    LogLevel level;
+    String format;
+    Object arg0;
+    Object arg1;
+    Object arg2;
+    Object arg3;
+
+    /**
+     * A slot of the ring buffer of {@link ServerLog}; allocated once, and refilled for every log message.
+     *
+     * @param sequence The initial sequence number of the slot, i.e. its index.
+     */
+    LogEntry(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return The message, formatted with its arguments; see {@link String#format(String, Object...)}.
+     */
+    String formatMessage() {
+        return String.format(format, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * Drops the references to the message and its arguments, so they can be garbage collected.
+     */
+    void clear() {
+        level = null;
+        format = null;
+        arg0 = null;
+        arg1 = null;
+        arg2 = null;
+        arg3 = null;
+    }
+}
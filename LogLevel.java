@@ -0,0 +1,6 @@
+enum LogLevel {
+    DEBUG,
+    INFO,
+    WARNING,
+    ERROR
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+abstract class MessageDecoder {
+    static final int BUFFER_SIZE = 1024;
+
+    /**
+     * Bytes received but not yet decoded: the start of a frame that has not fully arrived yet, kept for the next
+     * read. Always in write mode between calls.
+     */
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Reads as many bytes as have arrived on the passed {@code in} stream with a single {@link InputStream#read()},
+     * then decodes every complete frame; see {@link #decodeFrames(ByteBuffer)}.
+     *
+     * @param in The stream to read from.
+     * @return Boolean indicating success; {@code false} once the stream ends, or a frame is invalid or fails to be
+     * handled.
+     * @throws IOException From reading the stream.
+     */
+    boolean read(InputStream in) throws IOException {
+        int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+        if (read == -1) {
+            return false;
+        }
+        buffer.position(buffer.position() + read);
+
+        buffer.flip();
+        boolean success = decodeFrames(buffer);
+        buffer.compact();
+        return success;
+    }
+
+    /**
+     * Decodes every complete frame in the passed {@code bytes} (in read mode), following on from any frame left
+     * incomplete by the previous call, and keeps the start of a frame left incomplete by this one.
+     * <p>
+     * When no frame was left incomplete, the frames are decoded straight from the passed {@code bytes}, without
+     * copying.
+     *
+     * @param bytes The bytes to decode; consumed.
+     * @return Boolean indicating success; {@code false} once a frame is invalid or fails to be handled.
+     */
+    boolean decode(ByteBuffer bytes) {
+        if (buffer.position() == 0) {
+            if (!decodeFrames(bytes)) {
+                return false;
+            }
+            buffer.put(bytes);
+            return true;
+        }
+
+        while (bytes.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), bytes.remaining());
+            buffer.put(buffer.position(), bytes, bytes.position(), length);
+            buffer.position(buffer.position() + length);
+            bytes.position(bytes.position() + length);
+
+            buffer.flip();
+            boolean success = decodeFrames(buffer);
+            buffer.compact();
+            if (!success) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles every complete frame in the passed {@code frames} (in read mode) in order, leaving the position at the
+     * start of the first incomplete frame; see {@link #frameLength(ByteBuffer)} and
+     * {@link #handleFrame(ByteBuffer, int, int)}.
+     *
+     * @param frames The frames to decode.
+     * @return Boolean indicating success; {@code false} once a frame is invalid or fails to be handled.
+     */
+    boolean decodeFrames(ByteBuffer frames) {
+        while (frames.hasRemaining()) {
+            int length = frameLength(frames);
+            if (length == -1) {
+                return false;
+            }
+            if (length == 0 || frames.remaining() < length) {
+                return true;
+            }
+
+            int offset = frames.position();
+            if (!handleFrame(frames, offset, length)) {
+                return false;
+            }
+            frames.position(offset + length);
+        }
+        return true;
+    }
+
+    /**
+     * Works out the length of the frame at the position of the passed {@code frames} from its first byte(s), without
+     * consuming anything.
+     *
+     * @param frames The frames to decode.
+     * @return The length of the frame, 0 if more bytes are needed to tell, or -1 if the frame is invalid.
+     */
+    abstract int frameLength(ByteBuffer frames);
+
+    /**
+     * Handles a complete frame as a typed message event.
+     *
+     * @param frames The frames to decode.
+     * @param offset The index of the first byte of the frame.
+     * @param length The length of the frame; see {@link #frameLength(ByteBuffer)}.
+     * @return Boolean indicating success.
+     */
+    abstract boolean handleFrame(ByteBuffer frames, int offset, int length);
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+class MessageEncoder {
+    /**
+     * The most board deltas sent in a row before the next board is sent in full again, so a client whose board has
+     * drifted is back in sync within a few moves even if it never asks; see {@link Protocol#DELTA}.
+     */
+    static final int RESYNC_INTERVAL = 8;
+
+    // the protocol version messages are encoded in, see Protocol#VERSION
+    int version = 1;
+
+    // whether boards are sent as deltas where possible, see Protocol#DELTAS
+    boolean deltas = false;
+
+    // the last board sent to the client, or null if the next board has to be sent in full; and how many deltas were
+    // sent since the last full board
+    byte[] board = null;
+    int deltaCount = 0;
+
+    /**
+     * Encodes the messages the server sends to one client in the client's protocol version. The messages are built
+     * in protocol version 1, and passed through as they are as long as the client speaks it; see
+     * {@link Protocol#VERSION}.
+     * <p>
+     * Not thread-safe; see {@link ServerClient#sendLock}.
+     */
+    MessageEncoder() {
+    }
+
+    /**
+     * Translates version 1 messages into the client's protocol version.
+     * <p>
+     * In version 2, every message gains a length byte, and messages without a type byte of their own (starting,
+     * board and turn messages) also gain a type byte. If the client asked for deltas, a board that differs from the
+     * last one sent by a single new mark is sent as a {@link Protocol#DELTA} instead, with the turn message following
+     * it (if any) folded in.
+     *
+     * @param messages One or more complete version 1 messages.
+     * @return The same messages in the client's protocol version.
+     * @throws IllegalArgumentException If the passed {@code messages} are not version 1 messages.
+     */
+    byte[] encode(byte[] messages) {
+        if (version == 1) {
+            return messages;
+        }
+
+        // no message more than triples in size: a one-byte message becomes a three-byte frame
+        byte[] frames = new byte[messages.length * 3];
+        int position = 0;
+        for (int offset = 0; offset < messages.length; ) {
+            int firstByte = messages[offset];
+            int length = Protocol.serverMessageLength(firstByte);
+            if (length == -1) {
+                throw new IllegalArgumentException("Not a version 1 message: " + firstByte);
+            }
+            switch (firstByte) {
+                case 'x', 'o' -> {
+                    frames[position++] = Protocol.STARTING;
+                    frames[position++] = 1;
+                    frames[position++] = (byte) Character.toUpperCase(firstByte);
+                }
+                case 0, 1 -> {
+                    frames[position++] = Protocol.TURN;
+                    frames[position++] = 1;
+                    frames[position++] = (byte) firstByte;
+                }
+                case 'X', 'O', ' ' -> {
+                    int square = findDelta(messages, offset);
+                    if (square == -1) {
+                        frames[position++] = Protocol.BOARD;
+                        frames[position++] = 9;
+                        System.arraycopy(messages, offset, frames, position, 9);
+                        position += 9;
+                        deltaCount = 0;
+                    } else {
+                        int delta = square | (messages[offset + square] == 'O' ? Protocol.DELTA_O : 0);
+                        int next = offset + 9;
+                        if (next < messages.length && (messages[next] == 0 || messages[next] == 1)) {
+                            delta |= Protocol.DELTA_TURN | (messages[next] == 1 ? Protocol.DELTA_YOUR_TURN : 0);
+                            length++;
+                        }
+                        frames[position++] = Protocol.DELTA;
+                        frames[position++] = 1;
+                        frames[position++] = (byte) delta;
+                        deltaCount++;
+                    }
+                    if (deltas) {
+                        if (board == null) {
+                            board = new byte[9];
+                        }
+                        System.arraycopy(messages, offset, board, 0, 9);
+                    }
+                }
+                default -> {
+                    frames[position++] = (byte) firstByte;
+                    frames[position++] = (byte) (length - 1);
+                    System.arraycopy(messages, offset + 1, frames, position, length - 1);
+                    position += length - 1;
+                }
+            }
+            offset += length;
+        }
+        return Arrays.copyOf(frames, position);
+    }
+
+    /**
+     * @param messages The messages holding the board.
+     * @param offset   The index of the first square of the board.
+     * @return The only square of the board that was empty on the last board sent and is marked now, or -1 if the
+     * board has to be sent in full: deltas are off or due a resync (see {@link #RESYNC_INTERVAL} and
+     * {@link #resync()}), or the board differs in any other way (such as a new game starting).
+     */
+    int findDelta(byte[] messages, int offset) {
+        if (!deltas || board == null || deltaCount >= RESYNC_INTERVAL) {
+            return -1;
+        }
+
+        int changed = -1;
+        for (int square = 0; square < 9; square++) {
+            if (messages[offset + square] != board[square]) {
+                if (changed != -1 || board[square] != ' ') {
+                    return -1;
+                }
+                changed = square;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Makes the next board be sent in full; see {@link Protocol#RESYNC}.
+     */
+    void resync() {
+        board = null;
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class NioEventLoop {
+    Selector selector;
+    ByteBuffer readBuffer = ByteBuffer.allocateDirect(4096);
+    ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    Thread thread;
+
+    /**
+     * Opens the selector and starts a new thread that runs the event loop; see {@link #run()}.
+     *
+     * @param index Index of the event loop, used to name its thread.
+     * @throws IOException From {@link Selector#open()}.
+     */
+    NioEventLoop(int index) throws IOException {
+        selector = Selector.open();
+
+        thread = new Thread(this::run, "NioEventLoop-" + index);
+        thread.start();
+    }
+
+    /**
+     * Queues a task to be run on the event loop thread and wakes up the selector.
+     *
+     * @param task The task to run.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers an accepted socket channel with this event loop, then calls {@link NioServerClient#connect()} to
+     * initialize the client.
+     *
+     * @param channel The accepted socket channel.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            NioServerClient client = new NioServerClient(this, channel);
+            try {
+                channel.configureBlocking(false);
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+                return;
+            }
+
+            if (!client.connect()) {
+                ServerLog.log(LogLevel.WARNING, "%s failed to connect: %s", client,
+                        client.socket.getInetAddress().getHostAddress());
+            }
+        });
+    }
+
+    /**
+     * Waits for ready channels indefinitely, running queued tasks (see {@link #execute(Runnable)}) and handling
+     * readable and writable channels in between; see {@link #read(NioServerClient)} and
+     * {@link NioServerClient#flush()}.
+     */
+    void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NioServerClient client = (NioServerClient) key.attachment();
+                    if (key.isValid() && key.isWritable()) {
+                        client.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(client);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Reads whatever bytes are available from the client channel and passes them all at once to
+     * {@link NioServerClient#receiveMessage(ByteBuffer)}.
+     * <p>
+     * Once the channel reaches end-of-stream, or a message fails to be received or is invalid, calls
+     * {@link NioServerClient#disconnect()}.
+     *
+     * @param client The client whose channel is readable.
+     */
+    void read(NioServerClient client) {
+        readBuffer.clear();
+        int read;
+        try {
+            read = client.channel.read(readBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read == -1) {
+            client.disconnect();
+            return;
+        }
+
+        readBuffer.flip();
+        if (!client.receiveMessage(readBuffer)) {
+            client.disconnect();
+        }
+    }
+
+    /**
+     * Closes the selector, which stops the event loop thread.
+     */
+    void shutdown() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
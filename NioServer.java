@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+class NioServer {
+    static int eventLoopCount = Runtime.getRuntime().availableProcessors();
+
+    static ServerSocketChannel serverChannel = null;
+    static NioEventLoop[] eventLoops = null;
+    static int nextEventLoop = 0;
+
+    /**
+     * Opens the server socket channel and starts {@link #eventLoopCount} event loop threads; see
+     * {@link NioEventLoop#NioEventLoop(int)}.
+     * <p>
+     * The server socket channel is left in blocking mode so that {@link Server#main(String[])} can keep accepting
+     * connections on the main thread through the returned socket adaptor, just like in blocking mode.
+     *
+     * @param port The port to listen on.
+     * @return The server socket adaptor of the opened channel; see {@link ServerSocketChannel#socket()}.
+     * @throws IOException From {@link ServerSocketChannel#open()} and {@link ServerSocketChannel#bind}.
+     */
+    static ServerSocket open(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        eventLoops = new NioEventLoop[Math.max(1, eventLoopCount)];
+        for (int index = 0; index < eventLoops.length; index++) {
+            eventLoops[index] = new NioEventLoop(index);
+        }
+        return serverChannel.socket();
+    }
+
+    /**
+     * Hands an accepted socket channel over to the next event loop (round-robin); see
+     * {@link NioEventLoop#register(SocketChannel)}.
+     *
+     * @param channel The accepted socket channel.
+     */
+    static void register(SocketChannel channel) {
+        NioEventLoop eventLoop = eventLoops[nextEventLoop];
+        nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+        eventLoop.register(channel);
+    }
+
+    /**
+     * Stops all event loop threads.
+     */
+    static void shutdown() {
+        if (eventLoops == null) {
+            return;
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        eventLoops = null;
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+class NioServerClient extends ServerClient {
+    NioEventLoop eventLoop;
+    SocketChannel channel;
+    SelectionKey key;
+
+    final ByteBuffer outBuffer = ByteBuffer.allocate(512); // fits the longest message, 4 + Protocol#MAX_HOST_LENGTH
+    final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    int pendingBytes = 0; // only used while holding the pending queue's lock, see queuePending(ByteBuffer)
+
+    // the outgoing buffer and a shared frame, gathered into a single write; see sendShared(ByteBuffer)
+    final ByteBuffer[] gather = new ByteBuffer[2];
+
+    /**
+     * Wraps a non-blocking socket channel; the client is driven by its {@link NioEventLoop} instead of its own
+     * thread, so {@link #start()} must not be called.
+     *
+     * @param eventLoop The event loop the channel is registered with.
+     * @param channel   Socket channel to associate with the client.
+     */
+    NioServerClient(NioEventLoop eventLoop, SocketChannel channel) {
+        super(channel.socket());
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+    }
+
+    /**
+     * Calls the {@link Server#connect(ServerClient)} method for thread-safe server/game state updates.
+     * <p>
+     * Unlike {@link ServerClient#connect()}, no streams are set up; all I/O goes through the channel.
+     *
+     * @return Boolean indicating success.
+     */
+    @Override
+    boolean connect() {
+        // the client must be connected before it joins the queue, where it may be seated in a room right away
+        state = ClientState.CONNECTED;
+        if (!Server.connect(this)) {
+            disconnect();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes every message that has fully arrived in the bytes read by the event loop (see
+     * {@link MessageDecoder#decode(ByteBuffer)}) and hands them to {@link Server} for thread-safe server/game state
+     * updates; see {@link ServerDecoder}.
+     *
+     * @param bytes The bytes received from the client.
+     * @return Boolean indicating success.
+     */
+    boolean receiveMessage(ByteBuffer bytes) {
+        if (state != ClientState.CONNECTED) {
+            return false;
+        }
+
+        return decoder.decode(bytes);
+    }
+
+    /**
+     * Copies a message, already in the client's protocol version, into the outgoing buffer, to be sent by the next
+     * {@link #flushMessages()}.
+     */
+    @Override
+    void writeMessage(byte[] bytes) {
+        synchronized (pending) {
+            if (evicted) {
+                return;
+            }
+            if (outBuffer.remaining() < bytes.length) {
+                flushMessages();
+            }
+            outBuffer.put(bytes);
+        }
+    }
+
+    /**
+     * Writes the outgoing buffer to the channel directly when nothing is pending; whatever the socket does not accept
+     * right away is copied to the pending queue and written by the event loop once the channel becomes writable; see
+     * {@link #flush()}. If the write fails, the event loop disconnects the client; see {@link #abort()}.
+     */
+    @Override
+    void flushMessages() {
+        synchronized (pending) {
+            outBuffer.flip();
+            try {
+                if (pending.isEmpty()) {
+                    channel.write(outBuffer);
+                }
+                if (outBuffer.hasRemaining()) {
+                    queuePending(ByteBuffer.allocate(outBuffer.remaining()).put(outBuffer).flip());
+                }
+            } catch (IOException e) {
+                if (state == ClientState.CONNECTED && !evicted) {
+                    ServerLog.log(LogLevel.WARNING, "Failed to send messages to %s: %s", this, e.getMessage());
+                    abort();
+                }
+            } finally {
+                outBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the outgoing buffer and the passed shared {@code frame} to the channel in a single gathering write, but
+     * only when nothing is pending; a client that has not taken everything sent to them yet is skipped, and sent the
+     * latest frame once their pending queue has drained (see {@link #flush()}).
+     * <p>
+     * The frame is only read through its position, which only the broadcast thread moves. Whatever the socket does not
+     * accept right away is copied to the pending queue, as in {@link #flushMessages()}, and if the write fails, the
+     * event loop disconnects the client; see {@link #abort()}.
+     *
+     * @param frame The frame to send.
+     * @return Boolean indicating whether the frame was sent; {@code false} if it was skipped or the client is gone.
+     */
+    @Override
+    boolean sendShared(ByteBuffer frame) {
+        synchronized (pending) {
+            if (!pending.isEmpty()) {
+                checkOutbound(pendingBytes); // evicts the client once slow for too long
+                return false;
+            }
+            outBuffer.flip();
+            gather[0] = outBuffer;
+            gather[1] = frame.rewind();
+            try {
+                channel.write(gather);
+                if (outBuffer.hasRemaining() || frame.hasRemaining()) {
+                    queuePending(ByteBuffer.allocate(outBuffer.remaining() + frame.remaining()).put(outBuffer)
+                            .put(frame).flip());
+                }
+                return true;
+            } catch (IOException e) {
+                if (state == ClientState.CONNECTED && !evicted) {
+                    ServerLog.log(LogLevel.WARNING, "Failed to send messages to %s: %s", this, e.getMessage());
+                    abort();
+                }
+                return false;
+            } finally {
+                outBuffer.clear();
+                gather[1] = null;
+            }
+        }
+    }
+
+    /**
+     * Adds what the socket did not accept to the pending queue, and has the event loop wait for the channel to become
+     * writable; the client is evicted if the pending queue grows too large or stays large for too long, see
+     * {@link #checkOutbound(int)}. Only called while holding the pending queue's lock.
+     *
+     * @param buffer The bytes left to write.
+     */
+    void queuePending(ByteBuffer buffer) {
+        if (!checkOutbound(pendingBytes + buffer.remaining())) {
+            return;
+        }
+        pending.add(buffer);
+        pendingBytes += buffer.remaining();
+        eventLoop.execute(() -> {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    /**
+     * Writes as much of the pending queue as the channel accepts; see {@link #flushMessages()}.
+     * <p>
+     * Stops waiting for the channel to become writable once the pending queue is empty, and wakes up the broadcast
+     * thread if the client is watching a room; see {@link #sendShared(ByteBuffer)}. Calls {@link #disconnect()} if
+     * the write fails.
+     */
+    void flush() {
+        synchronized (pending) {
+            try {
+                ByteBuffer buffer;
+                while ((buffer = pending.peek()) != null) {
+                    pendingBytes -= channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        checkOutbound(pendingBytes);
+                        return;
+                    }
+                    pending.poll();
+                }
+                checkOutbound(0);
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (watching != null) {
+                    ServerSpectators.wake(); // send the latest state skipped while the client was lagging behind
+                }
+                return;
+            } catch (IOException e) {
+                pending.clear();
+                pendingBytes = 0;
+            }
+        }
+        disconnect();
+    }
+
+    /**
+     * Has the event loop disconnect the client; see {@link #disconnect()}.
+     */
+    @Override
+    void abort() {
+        eventLoop.execute(this::disconnect);
+    }
+}
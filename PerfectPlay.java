@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+class PerfectPlay {
+    /**
+     * The 8 symmetries of the board (4 rotations, each optionally mirrored), as the square each square maps onto.
+     */
+    static final int[][] SYMMETRIES = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8}, // identity
+            {2, 5, 8, 1, 4, 7, 0, 3, 6}, // rotated 90 degrees
+            {8, 7, 6, 5, 4, 3, 2, 1, 0}, // rotated 180 degrees
+            {6, 3, 0, 7, 4, 1, 8, 5, 2}, // rotated 270 degrees
+            {2, 1, 0, 5, 4, 3, 8, 7, 6}, // mirrored left to right
+            {6, 7, 8, 3, 4, 5, 0, 1, 2}, // mirrored top to bottom
+            {0, 3, 6, 1, 4, 7, 2, 5, 8}, // mirrored along the main diagonal
+            {8, 5, 2, 7, 4, 1, 6, 3, 0} // mirrored along the anti-diagonal
+    };
+
+    /**
+     * The best move (square 0-8) for the player to move in every reachable non-terminal position, indexed by the
+     * packed board (see {@link Bitboard#pack()}); -1 for positions that can't be reached or are over.
+     */
+    static final byte[] MOVES = new byte[1 << 18];
+
+    /**
+     * The minimax score of every reachable position up to symmetry, keyed by its canonical packed board (see
+     * {@link #canonical(int, int)}), from the point of view of the player to move; only used to build
+     * {@link #MOVES}.
+     */
+    static final HashMap<Integer, Integer> scores = new HashMap<>();
+
+    static int positions = 0;
+
+    /**
+     * Builds {@link #MOVES}, by memoized minimax over every reachable position; must be called once before any
+     * lookup, on startup.
+     */
+    static void build() {
+        if (positions != 0) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        Arrays.fill(MOVES, (byte) -1);
+        fill(0, 0);
+        ServerLog.log(LogLevel.INFO, "Built the perfect-play table: %d positions, %d up to symmetry (%.3f ms)",
+                positions, scores.size(), (System.nanoTime() - startTime) / 1e6);
+    }
+
+    /**
+     * Returns the best move for the player whose turn it is; a single table lookup, see {@link #build()}.
+     *
+     * @param board The board of a game in progress.
+     * @return The square to play, 0-8.
+     */
+    static int bestMove(Bitboard board) {
+        return MOVES[board.pack()];
+    }
+
+    /**
+     * Fills {@link #MOVES} for the passed position and every position reachable from it, by depth-first search.
+     *
+     * @param x The X mask of the position.
+     * @param o The O mask of the position.
+     */
+    static void fill(int x, int o) {
+        int packed = x << 9 | o;
+        if (MOVES[packed] != -1 || isOver(x, o)) {
+            return;
+        }
+        positions++;
+
+        boolean xToMove = Integer.bitCount(x) == Integer.bitCount(o);
+        int bestSquare = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int square = 0; square < 9; square++) {
+            int bit = 1 << square;
+            if (((x | o) & bit) != 0) {
+                continue;
+            }
+            int childX = xToMove ? x | bit : x;
+            int childO = xToMove ? o : o | bit;
+            int childScore = -score(childX, childO);
+            if (childScore > bestScore) {
+                bestScore = childScore;
+                bestSquare = square;
+            }
+        }
+        MOVES[packed] = (byte) bestSquare;
+
+        for (int square = 0; square < 9; square++) {
+            int bit = 1 << square;
+            if (((x | o) & bit) == 0) {
+                fill(xToMove ? x | bit : x, xToMove ? o : o | bit);
+            }
+        }
+    }
+
+    /**
+     * Scores a position by minimax, memoized over positions up to symmetry; see {@link #scores}.
+     * <p>
+     * A position the player to move has lost scores below 0, and sooner losses score lower (so the bot prefers the
+     * quickest win and the slowest loss); a tie scores 0.
+     *
+     * @param x The X mask of the position.
+     * @param o The O mask of the position.
+     * @return The score of the position for the player to move.
+     */
+    static int score(int x, int o) {
+        int key = canonical(x, o);
+        Integer memo = scores.get(key);
+        if (memo != null) {
+            return memo;
+        }
+
+        int filled = Integer.bitCount(x | o);
+        int score;
+        if (Bitboard.WINS[x] || Bitboard.WINS[o]) {
+            score = filled - 10; // the previous player completed a line
+        } else if (filled == 9) {
+            score = 0;
+        } else {
+            boolean xToMove = Integer.bitCount(x) == Integer.bitCount(o);
+            score = Integer.MIN_VALUE;
+            for (int square = 0; square < 9; square++) {
+                int bit = 1 << square;
+                if (((x | o) & bit) == 0) {
+                    score = Math.max(score, -score(xToMove ? x | bit : x, xToMove ? o : o | bit));
+                }
+            }
+        }
+        scores.put(key, score);
+        return score;
+    }
+
+    /**
+     * @param x The X mask of the position.
+     * @param o The O mask of the position.
+     * @return Whether the game is over in the position.
+     */
+    static boolean isOver(int x, int o) {
+        return Bitboard.WINS[x] || Bitboard.WINS[o] || Integer.bitCount(x | o) == 9;
+    }
+
+    /**
+     * @param x The X mask of the position.
+     * @param o The O mask of the position.
+     * @return The smallest packed board among the 8 symmetries of the position, shared by all of them.
+     */
+    static int canonical(int x, int o) {
+        int canonical = Integer.MAX_VALUE;
+        for (int[] symmetry : SYMMETRIES) {
+            canonical = Math.min(canonical, transform(x, symmetry) << 9 | transform(o, symmetry));
+        }
+        return canonical;
+    }
+
+    /**
+     * @param mask     A mask of squares.
+     * @param symmetry The square each square maps onto.
+     * @return The passed {@code mask} with every square mapped onto its image.
+     */
+    static int transform(int mask, int[] symmetry) {
+        int transformed = 0;
+        for (int square = 0; square < 9; square++) {
+            if ((mask >> square & 1) != 0) {
+                transformed |= 1 << symmetry[square];
+            }
+        }
+        return transformed;
+    }
+}
@@ -0,0 +1,37 @@
+class PlayerStats {
+    final int playerId;
+    final String name;
+
+    int wins = 0;
+    int losses = 0;
+    int ties = 0;
+    int bestStreak = 0;
+
+    /**
+     * The statistics of an identified player; see {@link PlayerStore}.
+     *
+     * @param playerId The ID of the player, which is also their record number in the player file (counted from 1).
+     * @param name     The name of the player.
+     */
+    PlayerStats(int playerId, String name) {
+        this.playerId = playerId;
+        this.name = name;
+    }
+
+    /**
+     * Orders players by rank on the leaderboard: most wins first, then longest streak, then name.
+     *
+     * @param other The player to compare to.
+     * @return A negative integer, zero, or a positive integer as this player ranks above, equal to, or below the
+     * passed {@code other} player.
+     */
+    int compareRank(PlayerStats other) {
+        if (wins != other.wins) {
+            return Integer.compare(other.wins, wins);
+        }
+        if (bestStreak != other.bestStreak) {
+            return Integer.compare(other.bestStreak, bestStreak);
+        }
+        return name.compareTo(other.name);
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+class PlayerStore {
+    static final int MAX_NAME_LENGTH = 16;
+    static final int RECORD_SIZE = MAX_NAME_LENGTH + 16; // name, wins, losses, ties and best streak
+    static final int CACHE_SIZE = 4096;
+    static final int LEADERBOARD_SIZE = 10;
+    static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    static FileChannel channel = null;
+
+    /**
+     * Guards every field below; held only for in-memory work (and the rare read of an uncached record), never while
+     * writing to the player file.
+     */
+    static final ReentrantLock lock = new ReentrantLock();
+
+    // the name and ID of every player in the player file; IDs are record numbers counted from 1
+    static final HashMap<String, Integer> playerIds = new HashMap<>();
+    static final ArrayList<String> names = new ArrayList<>();
+
+    /**
+     * The most recently used player statistics, in access order; the least recently used are evicted once there are
+     * more than {@link #CACHE_SIZE}. Evicted statistics that were not yet written out stay in {@link #dirty}.
+     */
+    static final LinkedHashMap<Integer, PlayerStats> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PlayerStats> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // statistics changed since the last flush, and statistics being written by the current flush; see flush()
+    static HashMap<Integer, PlayerStats> dirty = new HashMap<>();
+    static HashMap<Integer, PlayerStats> flushing = new HashMap<>();
+
+    /**
+     * The top {@link #LEADERBOARD_SIZE} players, kept in rank order as statistics change; see
+     * {@link PlayerStats#compareRank(PlayerStats)}. Wins only ever grow, so a player outside the leaderboard can only
+     * enter it by passing the last player on it, and it never has to be rebuilt.
+     */
+    static final TreeSet<PlayerStats> leaderboard = new TreeSet<>(PlayerStats::compareRank);
+
+    static volatile boolean running = false;
+    static Thread flushThread = null;
+
+    /**
+     * Opens (or creates) the player file, reads the name of every player in it and builds the leaderboard from their
+     * statistics (which are not cached until used), then starts a thread that writes changed statistics to the file
+     * in the background; see {@link #flush()}.
+     *
+     * @param file The player file.
+     * @throws IOException From opening or reading the player file.
+     */
+    static void open(String file) throws IOException {
+        channel = FileChannel.open(Path.of(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        // a player added right before a crash may never have been written out, leaving an empty record; the record
+        // keeps its ID (IDs are record positions), and the players after it are still read
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        long position = 0;
+        int empty = 0;
+        while (channel.read(buffer, position) > 0) {
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                PlayerStats stats = decode(buffer, names.size() + 1);
+                position += RECORD_SIZE;
+                if (stats == null) {
+                    names.add(null);
+                    empty++;
+                    continue;
+                }
+                playerIds.put(stats.name, stats.playerId);
+                names.add(stats.name);
+                rank(stats);
+            }
+            buffer.compact();
+            position -= buffer.position(); // a partly read record is read again in full
+            buffer.clear();
+        }
+        while (!names.isEmpty() && names.getLast() == null) {
+            names.removeLast();
+            empty--;
+        }
+        ServerLog.log(LogLevel.INFO, "Loaded %d players from %s", playerIds.size(), file);
+        if (empty > 0) {
+            ServerLog.log(LogLevel.WARNING, "Skipped %d empty player records in %s", empty, file);
+        }
+
+        running = true;
+        flushThread = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(FLUSH_INTERVAL);
+                flush();
+            }
+        }, "PlayerStore");
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    /**
+     * Stops the flush thread and writes out the remaining changed statistics.
+     */
+    static void close() {
+        if (channel == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flushThread);
+        try {
+            flushThread.join(1000);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        channel = null;
+    }
+
+    /**
+     * @param name The name to check.
+     * @return Whether the passed {@code name} is a valid player name: 1 to {@link #MAX_NAME_LENGTH} letters, digits,
+     * underscores or hyphens.
+     */
+    static boolean isValidName(String name) {
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            return false;
+        }
+        for (int index = 0; index < name.length(); index++) {
+            char character = name.charAt(index);
+            if (!(character >= 'a' && character <= 'z' || character >= 'A' && character <= 'Z'
+                    || character >= '0' && character <= '9' || character == '_' || character == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the player with the passed {@code name}, adding them if they are new, and loads their statistics into
+     * the cache ahead of their first game.
+     * <p>
+     * Called on the client's reader thread when they identify themselves; see
+     * {@link Server#receiveName(ServerClient, String)}.
+     *
+     * @param name The name of the player; see {@link #isValidName(String)}.
+     * @return The ID of the player, or 0 if there is no player file.
+     */
+    static int identify(String name) {
+        if (channel == null) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            Integer playerId = playerIds.get(name);
+            if (playerId != null) {
+                get(playerId);
+                return playerId;
+            }
+
+            PlayerStats stats = new PlayerStats(names.size() + 1, name);
+            playerIds.put(name, stats.playerId);
+            names.add(name);
+            cache.put(stats.playerId, stats);
+            dirty.put(stats.playerId, stats);
+            return stats.playerId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param playerId The ID of a player.
+     * @return The name of the player, or {@code null} if there is no such player.
+     */
+    static String getName(int playerId) {
+        lock.lock();
+        try {
+            return playerId >= 1 && playerId <= names.size() ? names.get(playerId - 1) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a win for the passed {@code client}, if they identified themselves.
+     *
+     * @param client The client who won.
+     * @param streak The length of their current win streak.
+     */
+    static void recordWin(ServerClient client, int streak) {
+        int playerId = client.playerId;
+        if (playerId == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            PlayerStats stats = get(playerId);
+            boolean ranked = leaderboard.remove(stats);
+            stats.wins++;
+            stats.bestStreak = Math.max(stats.bestStreak, streak);
+            dirty.put(playerId, stats);
+            if (ranked || leaderboard.size() < LEADERBOARD_SIZE || stats.compareRank(leaderboard.last()) < 0) {
+                rank(stats);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a loss or tie for the passed {@code client}, if they identified themselves.
+     *
+     * @param client The client who lost or tied.
+     * @param tie    Whether the game was a tie.
+     */
+    static void recordLoss(ServerClient client, boolean tie) {
+        int playerId = client.playerId;
+        if (playerId == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            PlayerStats stats = get(playerId);
+            boolean ranked = leaderboard.remove(stats);
+            if (tie) {
+                stats.ties++;
+            } else {
+                stats.losses++;
+            }
+            dirty.put(playerId, stats);
+            if (ranked) {
+                leaderboard.add(stats);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the passed {@code stats} to the leaderboard, dropping the last player if it grows past
+     * {@link #LEADERBOARD_SIZE}.
+     *
+     * @param stats The statistics of the player to add.
+     */
+    static void rank(PlayerStats stats) {
+        leaderboard.add(stats);
+        if (leaderboard.size() > LEADERBOARD_SIZE) {
+            leaderboard.pollLast();
+        }
+    }
+
+    /**
+     * Returns the statistics of a player from the cache, from statistics not yet written out, or else from the player
+     * file (caching them). Must be called while holding {@link #lock}.
+     *
+     * @param playerId The ID of the player.
+     * @return The statistics of the player.
+     */
+    static PlayerStats get(int playerId) {
+        PlayerStats stats = cache.get(playerId);
+        if (stats != null) {
+            return stats;
+        }
+        stats = dirty.get(playerId);
+        if (stats == null) {
+            stats = flushing.get(playerId);
+        }
+        if (stats == null) {
+            stats = read(playerId);
+        }
+        cache.put(playerId, stats);
+        return stats;
+    }
+
+    /**
+     * @param playerId The ID of the player.
+     * @return The statistics of the player as last written to the player file, or empty statistics if they could not
+     * be read.
+     */
+    static PlayerStats read(int playerId) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        try {
+            long position = (long) (playerId - 1) * RECORD_SIZE;
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                // read the rest of the record
+            }
+        } catch (IOException e) {
+            ServerLog.log(LogLevel.ERROR, "Failed to read player #%d: %s", playerId, e.getMessage());
+        }
+        buffer.flip();
+        PlayerStats stats = buffer.remaining() == RECORD_SIZE ? decode(buffer, playerId) : null;
+        return stats != null ? stats : new PlayerStats(playerId, names.get(playerId - 1));
+    }
+
+    /**
+     * Writes the statistics changed since the last flush to the player file in one batch, in order of player ID, so
+     * that a crash part way through a batch cannot leave a new player's record written behind an earlier one that
+     * never was. Statistics are copied while holding {@link #lock} and written after releasing it, and stay readable
+     * through {@link #flushing} until they are written.
+     */
+    static void flush() {
+        lock.lock();
+        HashMap<Integer, PlayerStats> batch = dirty;
+        ByteBuffer buffer = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+        long[] positions = new long[batch.size()];
+        try {
+            if (batch.isEmpty()) {
+                return;
+            }
+            int index = 0;
+            for (PlayerStats stats : new TreeMap<>(batch).values()) {
+                positions[index++] = (long) (stats.playerId - 1) * RECORD_SIZE;
+                encode(buffer, stats);
+            }
+            flushing = batch;
+            dirty = new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            for (int index = 0; index < positions.length; index++) {
+                ByteBuffer record = buffer.slice(index * RECORD_SIZE, RECORD_SIZE);
+                while (record.hasRemaining()) {
+                    channel.write(record, positions[index] + record.position());
+                }
+            }
+        } catch (IOException e) {
+            ServerLog.log(LogLevel.ERROR, "Failed to write player statistics: %s", e.getMessage());
+        }
+
+        lock.lock();
+        try {
+            flushing = new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the record of the passed {@code stats} to the passed {@code buffer}.
+     *
+     * @param buffer The buffer to append to.
+     * @param stats  The statistics to encode.
+     */
+    static void encode(ByteBuffer buffer, PlayerStats stats) {
+        byte[] name = stats.name.getBytes(StandardCharsets.US_ASCII);
+        buffer.put(name).put(new byte[MAX_NAME_LENGTH - name.length]);
+        buffer.putInt(stats.wins).putInt(stats.losses).putInt(stats.ties).putInt(stats.bestStreak);
+    }
+
+    /**
+     * Reads a record from the passed {@code buffer}.
+     *
+     * @param buffer   The buffer to read from.
+     * @param playerId The ID of the player the record belongs to.
+     * @return The statistics in the record, or {@code null} if the record is empty (never written).
+     */
+    static PlayerStats decode(ByteBuffer buffer, int playerId) {
+        byte[] name = new byte[MAX_NAME_LENGTH];
+        buffer.get(name);
+        int length = 0;
+        while (length < name.length && name[length] != 0) {
+            length++;
+        }
+        if (length == 0) {
+            buffer.position(buffer.position() + RECORD_SIZE - MAX_NAME_LENGTH);
+            return null;
+        }
+
+        PlayerStats stats = new PlayerStats(playerId, new String(name, 0, length, StandardCharsets.US_ASCII));
+        stats.wins = buffer.getInt();
+        stats.losses = buffer.getInt();
+        stats.ties = buffer.getInt();
+        stats.bestStreak = buffer.getInt();
+        return stats;
+    }
+
+    /**
+     * @return The leaderboard as text: one line per player, with their rank, name, wins, losses, ties and best
+     * streak; see {@link #leaderboard}.
+     */
+    static String renderLeaderboard() {
+        StringBuilder builder = new StringBuilder();
+        lock.lock();
+        try {
+            int rank = 0;
+            for (PlayerStats stats : leaderboard) {
+                builder.append(String.format("%2d. %-16s %6d wins %6d losses %6d ties  best streak %d\n", ++rank,
+                        stats.name, stats.wins, stats.losses, stats.ties, stats.bestStreak));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,167 @@
+import java.nio.charset.StandardCharsets;
+
+class Protocol {
+    /**
+     * The highest protocol version supported. Version 1 is the original protocol, where the first byte of a message
+     * determines its length; version 2 frames every message as a type byte, a payload length byte and the payload,
+     * and is negotiated by the client sending {@link #HELLO} with the version as its first message.
+     */
+    static final int VERSION = 2;
+
+    // version 2 message types sent by the server; payloads in brackets
+    static final byte HELLO = 'V'; // [version], answering the client's hello, which is `V` followed by the version
+    static final byte WAITING = 'w'; // []
+    static final byte STARTING = 'S'; // [role, `X` or `O`]
+    static final byte QUEUE = 'Q'; // [clients ahead, 2 to 4 bytes, high byte first]; see #queue(int)
+    static final byte BOARD = 'B'; // [9 squares, `X`, `O` or ` `]
+    static final byte TURN = 'N'; // [1 = your turn, 0 = other player's turn]
+    static final byte INVALID = 'I'; // []
+    static final byte WON = 'W'; // [streak, 1..255]
+    static final byte LOST = 'L'; // []
+    static final byte TIED = 'T'; // []
+    static final byte DELTAS = 'D'; // [1 = boards sent as deltas from now on, 0 = in full], answering DELTAS_REQUEST
+    static final byte DELTA = 'd'; // [square 0..8, plus DELTA_O if marked O, plus DELTA_TURN if followed by a turn]
+    static final byte WATCHING = 'G'; // [room watched, 0 = none], answering WATCH
+    static final byte GAME = 'g'; // [room, 9 squares, state], the state of a watched room; see ServerGame#publishState
+    static final byte REDIRECT = 'r'; // [port high byte, port low byte, host], move to another server of the cluster
+
+    // the flags of a delta, a board differing from the last one sent by a single new mark; see MessageEncoder
+    static final int DELTA_O = 0x10;
+    static final int DELTA_TURN = 0x20; // the turn message following the board is folded in
+    static final int DELTA_YOUR_TURN = 0x40; // with DELTA_TURN: 1 = your turn, 0 = other player's turn
+
+    // version 2 message types sent by the client; payloads in brackets
+    static final byte MOVE = 'M'; // [square, 1..9]
+    static final byte PLAY_AGAIN = 'A'; // [1 = yes, 0 = no]
+    static final byte IDENTIFY = 'P'; // [name]
+    static final byte QUIT = 'Q'; // []
+    static final byte DELTAS_REQUEST = 'D'; // [1 = send boards as deltas where possible, 0 = always in full]
+    static final byte RESYNC = 'R'; // [], asking for the board in full, such as when a delta does not fit
+    static final byte WATCH = 'W'; // [room to watch while queued, 1..255, 0 = stop watching]
+
+    // cluster messages between a server and the coordinator, framed as in version 2; see ServerCluster and Coordinator
+    static final byte NODE = 'N'; // [port high byte, port low byte, host (optional)], where a server takes clients
+    static final byte LOAD = 'L'; // [clients waiting alone, clients queued], each as 2 bytes, high byte first
+    static final byte TRANSFER = 'T'; // [port high byte, port low byte, host], move a waiting client to that server
+
+    // the longest host an address message can carry, in bytes: the rest of the 255 byte payload after the port
+    static final int MAX_HOST_LENGTH = 253;
+
+    /**
+     * @param firstByte The first byte of a version 1 message sent by the server.
+     * @return The length of the message, or -1 if the byte does not start a message.
+     */
+    static int serverMessageLength(int firstByte) {
+        return switch (firstByte) {
+            case 'w', 'x', 'o', 0, 1, 'I', 'L', 'T' -> 1;
+            case 'Q', 'W' -> 2;
+            case 'X', 'O', ' ' -> 9;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @param version The protocol version the client speaks.
+     * @return The client's hello, asking to switch to the passed {@code version}; see {@link #VERSION}.
+     */
+    static byte[] hello(int version) {
+        return new byte[]{HELLO, (byte) version};
+    }
+
+    /**
+     * @param version The protocol version the client speaks.
+     * @param square  The square to play, 1-9.
+     * @return The client's move message.
+     */
+    static byte[] move(int version, int square) {
+        return version == 2 ? new byte[]{MOVE, 1, (byte) square} : new byte[]{(byte) square};
+    }
+
+    /**
+     * @param version   The protocol version the client speaks.
+     * @param playAgain Whether the winner wants to play again.
+     * @return The winner's reply message.
+     */
+    static byte[] playAgain(int version, boolean playAgain) {
+        if (version == 2) {
+            return new byte[]{PLAY_AGAIN, 1, (byte) (playAgain ? 1 : 0)};
+        }
+        return new byte[]{(byte) (playAgain ? 'Y' : 'N')};
+    }
+
+    /**
+     * @param name The player name, 1 to 16 ASCII characters.
+     * @return The client's identify message; the same in both versions.
+     */
+    static byte[] identify(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = new byte[2 + nameBytes.length];
+        bytes[0] = IDENTIFY;
+        bytes[1] = (byte) nameBytes.length;
+        System.arraycopy(nameBytes, 0, bytes, 2, nameBytes.length);
+        return bytes;
+    }
+
+    /**
+     * @param deltas Whether boards should be sent as deltas where possible.
+     * @return The client's request for board deltas; only in version 2, see {@link #DELTA}.
+     */
+    static byte[] deltas(boolean deltas) {
+        return new byte[]{DELTAS_REQUEST, 1, (byte) (deltas ? 1 : 0)};
+    }
+
+    /**
+     * @return The client's request for the board in full; only in version 2, see {@link #DELTA}.
+     */
+    static byte[] resync() {
+        return new byte[]{RESYNC, 0};
+    }
+
+    /**
+     * @param room The room to watch while queued, or 0 to stop watching.
+     * @return The client's request to watch a room; only in version 2, see {@link #GAME}.
+     */
+    static byte[] watch(int room) {
+        return new byte[]{WATCH, 1, (byte) room};
+    }
+
+    /**
+     * Version 1 has a single byte for the position, 0…254, with 255 meaning "lots" (255 or more); version 2 carries
+     * the exact position in as few bytes as it fits in, from 2 (below 65536) to 4, high byte first.
+     *
+     * @param position The number of clients ahead in the queue.
+     * @return The server's queue position message in version 2.
+     */
+    static byte[] queue(int position) {
+        int length = position < 1 << 16 ? 2 : position < 1 << 24 ? 3 : 4;
+        byte[] bytes = new byte[2 + length];
+        bytes[0] = QUEUE;
+        bytes[1] = (byte) length;
+        for (int index = bytes.length - 1; index >= 2; index--, position >>>= 8) {
+            bytes[index] = (byte) position;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param type The type of the message, such as {@link #REDIRECT} or {@link #TRANSFER}.
+     * @param host The host of the server, in ASCII.
+     * @param port The port of the server.
+     * @return A version 2 message pointing to another server of the cluster.
+     * @throws IllegalArgumentException If the passed {@code host} is longer than {@link #MAX_HOST_LENGTH}; hosts are
+     *                                  checked when a server registers, see {@link CoordinatorNode#run()}.
+     */
+    static byte[] address(byte type, String host, int port) {
+        byte[] hostBytes = host.getBytes(StandardCharsets.US_ASCII);
+        if (hostBytes.length > MAX_HOST_LENGTH) {
+            throw new IllegalArgumentException("Host too long: " + host);
+        }
+        byte[] bytes = new byte[4 + hostBytes.length];
+        bytes[0] = type;
+        bytes[1] = (byte) (2 + hostBytes.length);
+        bytes[2] = (byte) (port >> 8);
+        bytes[3] = (byte) port;
+        System.arraycopy(hostBytes, 0, bytes, 4, hostBytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,47 @@
+class RateLimiter {
+    final long cost;
+    final long capacity;
+    final long floodLimit;
+
+    // the credit in nanoseconds (one message costs cost), and when it was last topped up; only used by the thread
+    // decoding the client's messages, so they need no lock
+    long credit;
+    long lastTime = System.nanoTime();
+
+    /**
+     * A token bucket limiting how many messages a client may send: it holds up to {@code burst} messages' worth of
+     * credit, topped up at {@code rate} messages per second. Tokens are counted in nanoseconds, so topping the bucket
+     * up is a subtraction of two {@link System#nanoTime()} readings.
+     * <p>
+     * Not thread-safe: each client's bucket is only ever used by the single thread decoding its messages (its reader
+     * thread, or its event loop in NIO mode); see {@link ServerDecoder}.
+     *
+     * @param rate       The number of messages per second a client may send, sustained.
+     * @param burst      The number of messages a client may send at once, after being quiet.
+     * @param floodLimit The number of messages over the limit after which the client is flooding; see
+     *                   {@link #acquire()}.
+     */
+    RateLimiter(int rate, int burst, int floodLimit) {
+        cost = 1_000_000_000L / rate;
+        capacity = cost * burst;
+        this.floodLimit = -cost * floodLimit;
+        credit = capacity;
+    }
+
+    /**
+     * Takes one message's worth of credit, which may leave the bucket in debt: messages that arrive while it is are
+     * over the limit, and still add to the debt, so a client sending a little too fast is only slowed down while one
+     * that keeps sending regardless soon runs up {@code floodLimit} messages of debt.
+     *
+     * @return 1 if the message is within the limit, 0 if it is over the limit, or -1 if the client is flooding.
+     */
+    int acquire() {
+        long now = System.nanoTime();
+        credit = Math.min(capacity, credit + (now - lastTime)) - cost;
+        lastTime = now;
+        if (credit >= 0) {
+            return 1;
+        }
+        return credit < floodLimit ? -1 : 0;
+    }
+}
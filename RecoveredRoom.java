@@ -0,0 +1,21 @@
+class RecoveredRoom {
+    final int roomId;
+
+    boolean playing = false;
+    int playerXId = 0;
+    int playerOId = 0;
+    Bitboard board = new Bitboard();
+    int turn = 0;
+
+    int winnerId = 0;
+    int streak = 0;
+
+    /**
+     * The state of a game room as rebuilt from the journal on startup; see {@link ServerJournal#replay()}.
+     *
+     * @param roomId The ID of the room.
+     */
+    RecoveredRoom(int roomId) {
+        this.roomId = roomId;
+    }
+}
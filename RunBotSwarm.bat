@@ -0,0 +1,4 @@
+@echo off
+javac BotSwarm.java -d out/botswarm
+cd out/botswarm
+java BotSwarm %*
\ No newline at end of file
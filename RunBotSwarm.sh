@@ -0,0 +1,4 @@
+#!/usr/bin/env bash
+javac BotSwarm.java -d out/botswarm
+cd out/botswarm
+java BotSwarm "$@"
\ No newline at end of file
@@ -0,0 +1,4 @@
+@echo off
+javac Coordinator.java -d out/coordinator
+cd out/coordinator
+java Coordinator %*
\ No newline at end of file
@@ -1,25 +1,74 @@
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 class Server {
     static int port = 9876;
+    static ServerMode mode = ServerMode.BLOCKING;
+
+    static int roomCount = Runtime.getRuntime().availableProcessors();
+    static int metricsPort = 0;
+    static LogLevel logLevel = LogLevel.INFO;
+    static int botDelay = -1;
+    static String journalFile = "server.journal";
+    static String playerFile = "players.db";
+    static int queueTick = 100;
+    static String coordinator = null;
+    static int drainTimeout = 30;
+    static String snapshotFile = "server.snapshot";
+    static int rateLimit = 20;
+    static int rateBurst = 40;
+    static int floodLimit = 200;
+    static String advertisedHost = null;
 
     static ServerSocket serverSocket = null;
-    static ServerGame game = null;
-    static ArrayList<ServerClient> clients = null;
+    static ServerLobby lobby = null;
 
     /**
-     * Initializes the server, shutdown hook, server socket and server game state.
+     * Initializes the server, shutdown hook, server socket, player statistics (see {@link PlayerStore}), journal
+     * (recovering from it; see {@link ServerJournal#open(String)}), server lobby (queue and game rooms, restoring
+     * the snapshot written when the server last stopped; see {@link ServerSnapshot#load(String)}), the
+     * broadcasts to queued clients watching a room (see {@link ServerSpectators}) and the connection to the cluster
+     * coordinator, if any; see {@link ServerCluster}.
      * <p>
      * Listens for server socket connections on the main thread indefinitely with {@link ServerSocket#accept()}, and
-     * passes accepted socket connections to {@link ServerClient#ServerClient(Socket)}.
+     * passes accepted socket connections to {@link ServerClient#ServerClient(Socket)} (blocking and virtual modes) or
+     * {@link NioServer#register(SocketChannel)} (NIO mode).
      * <p>
      * Runs {@link #shutdown()} once the server socket closes.
      *
-     * @param args Takes in a port number as argument #1, which defaults to {@link #port}.
-     * @throws IOException From the {@link ServerSocket#ServerSocket(int)} constructor.
+     * @param args Takes in a port number as argument #1, which defaults to {@link #port}. Takes in a server mode
+     *             ({@code blocking}, {@code virtual} or {@code nio}) as argument #2, which defaults to
+     *             {@link #mode}. Takes in a number of game rooms as argument #3, which defaults to
+     *             {@link #roomCount}. Takes in a port to serve metrics on as argument #4, which defaults to
+     *             {@link #metricsPort} (not served over HTTP); see {@link ServerMetrics#start(int)}. Takes in a log
+     *             level ({@code debug}, {@code info}, {@code warning} or {@code error}) as argument #5, which
+     *             defaults to {@link #logLevel}; see {@link ServerLog}. Takes in a delay in seconds as argument #6,
+     *             after which a client waiting alone for another player is given a bot opponent, which defaults to
+     *             {@link #botDelay} (no bots); see {@link ServerBot}. Takes in a journal file as argument #7, which
+     *             defaults to {@link #journalFile} ({@code none} to keep no journal); see {@link ServerJournal}.
+     *             Takes in a player statistics file as argument #8, which defaults to {@link #playerFile}
+     *             ({@code none} to keep no statistics); see {@link PlayerStore}. Takes in the interval in
+     *             milliseconds at which queued clients are sent their changed positions as argument #9, which
+     *             defaults to {@link #queueTick}; see {@link ServerLobby#sendQueueUpdates()}. Takes in the address of
+     *             a cluster coordinator ({@code host:port}) as argument #10, which defaults to {@link #coordinator}
+     *             (no cluster); see {@link ServerCluster}. Takes in the time in seconds games in progress are given
+     *             to finish when the server stops as argument #11, which defaults to {@link #drainTimeout}; see
+     *             {@link #drain()}. Takes in a snapshot file as argument #12, which defaults to {@link #snapshotFile}
+     *             ({@code none} to keep no snapshot); see {@link ServerSnapshot}. Takes in the number of messages
+     *             per second a client may send as argument #13, which defaults to {@link #rateLimit}, the number of
+     *             messages a client may send at once as argument #14, which defaults to {@link #rateBurst}, and the
+     *             number of messages over the limit after which a client is disconnected for flooding as argument
+     *             #15, which defaults to {@link #floodLimit}; see {@link RateLimiter}. Takes in the host other
+     *             servers of the cluster send clients to, to reach this server, as argument #16, which defaults to
+     *             {@link #advertisedHost} (the address the coordinator sees the server connect from); see
+     *             {@link ServerCluster#connect()}.
+     * @throws IOException From the {@link ServerSocket#ServerSocket(int)} constructor, {@link NioServer#open(int)},
+     *                     {@link PlayerStore#open(String)}, {@link ServerJournal#open(String)} or
+     *                     {@link ServerSnapshot#load(String)}.
      */
     public static void main(String[] args) throws IOException {
         clear();
@@ -32,16 +81,161 @@ class Server {
                 System.exit(-1);
             }
         }
+        if (args.length >= 2) {
+            try {
+                mode = ServerMode.valueOf(args[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.printf("ERROR: Invalid server mode \"%s\"\n", args[1]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 3) {
+            try {
+                roomCount = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                System.out.printf("ERROR: Invalid room count \"%s\"\n", args[2]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 4) {
+            try {
+                metricsPort = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                System.out.printf("ERROR: Invalid metrics port number \"%s\"\n", args[3]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 5) {
+            try {
+                logLevel = LogLevel.valueOf(args[4].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.printf("ERROR: Invalid log level \"%s\"\n", args[4]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 6) {
+            try {
+                botDelay = Integer.parseInt(args[5]);
+            } catch (NumberFormatException e) {
+                System.out.printf("ERROR: Invalid bot delay \"%s\"\n", args[5]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 7) {
+            journalFile = args[6].equalsIgnoreCase("none") ? null : args[6];
+        }
+        if (args.length >= 8) {
+            playerFile = args[7].equalsIgnoreCase("none") ? null : args[7];
+        }
+        if (args.length >= 9) {
+            try {
+                queueTick = Integer.parseInt(args[8]);
+            } catch (NumberFormatException e) {
+                queueTick = 0;
+            }
+            if (queueTick < 1) {
+                System.out.printf("ERROR: Invalid queue tick \"%s\"\n", args[8]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 10) {
+            coordinator = args[9].equalsIgnoreCase("none") ? null : args[9];
+            if (coordinator != null && !coordinator.matches(".+:\\d{1,5}")) {
+                System.out.printf("ERROR: Invalid coordinator address \"%s\"\n", args[9]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 11) {
+            try {
+                drainTimeout = Integer.parseInt(args[10]);
+            } catch (NumberFormatException e) {
+                drainTimeout = -1;
+            }
+            if (drainTimeout < 0) {
+                System.out.printf("ERROR: Invalid drain timeout \"%s\"\n", args[10]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 12) {
+            snapshotFile = args[11].equalsIgnoreCase("none") ? null : args[11];
+        }
+        if (args.length >= 13) {
+            try {
+                rateLimit = Integer.parseInt(args[12]);
+            } catch (NumberFormatException e) {
+                rateLimit = 0;
+            }
+            if (rateLimit < 1) {
+                System.out.printf("ERROR: Invalid rate limit \"%s\"\n", args[12]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 14) {
+            try {
+                rateBurst = Integer.parseInt(args[13]);
+            } catch (NumberFormatException e) {
+                rateBurst = 0;
+            }
+            if (rateBurst < 1) {
+                System.out.printf("ERROR: Invalid rate burst \"%s\"\n", args[13]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 15) {
+            try {
+                floodLimit = Integer.parseInt(args[14]);
+            } catch (NumberFormatException e) {
+                floodLimit = 0;
+            }
+            if (floodLimit < 1) {
+                System.out.printf("ERROR: Invalid flood limit \"%s\"\n", args[14]);
+                System.exit(-1);
+            }
+        }
+        if (args.length >= 16) {
+            advertisedHost = args[15].equalsIgnoreCase("none") ? null : args[15];
+            if (advertisedHost != null && !advertisedHost.matches("\\p{Graph}{1," + Protocol.MAX_HOST_LENGTH + "}")) {
+                System.out.printf("ERROR: Invalid advertised host \"%s\"\n", args[15]);
+                System.exit(-1);
+            }
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(Server::shutdown));
 
-        clients = new ArrayList<>();
-        serverSocket = new ServerSocket(port);
-        System.out.printf("Server started on port %d\n", port);
-        game = new ServerGame();
+        serverSocket = mode == ServerMode.NIO ? NioServer.open(port) : new ServerSocket(port);
+        ServerLog.level = logLevel;
+        ServerLog.log(LogLevel.INFO, "Server started on port %d (%s mode)", port, mode.name().toLowerCase());
+        if (botDelay >= 0) {
+            PerfectPlay.build();
+        }
+        if (playerFile != null) {
+            PlayerStore.open(playerFile);
+        }
+        if (journalFile != null) {
+            ServerJournal.open(journalFile);
+        }
+        if (snapshotFile != null) {
+            ServerSnapshot.load(snapshotFile);
+        }
+        if (mode != ServerMode.NIO) {
+            ServerClient.startWriters();
+        }
+        lobby = new ServerLobby(roomCount);
+        ServerJournal.restore(lobby);
+        ServerSnapshot.restore(lobby);
+        ServerSpectators.start(lobby);
+        if (coordinator != null) {
+            ServerCluster.start(lobby, coordinator);
+        }
+        ServerMetrics.start(metricsPort);
         while (serverSocket != null) {
             try {
-                new ServerClient(serverSocket.accept());
+                Socket socket = serverSocket.accept();
+                if (mode == ServerMode.NIO) {
+                    NioServer.register(socket.getChannel());
+                } else {
+                    new ServerClient(socket).start();
+                }
             } catch (IOException e) {
                 // ignore
             }
@@ -49,6 +243,22 @@ class Server {
         shutdown();
     }
 
+    /**
+     * Starts a new thread that runs the passed {@code task}; a virtual thread in virtual mode, otherwise a platform
+     * thread.
+     *
+     * @param task The task to run.
+     * @return The started thread.
+     */
+    static Thread startThread(Runnable task) {
+        if (mode == ServerMode.VIRTUAL) {
+            return Thread.ofVirtual().start(task);
+        }
+        Thread thread = new Thread(task);
+        thread.start();
+        return thread;
+    }
+
     /**
      * Attempt to clear the console using control sequences.
      */
@@ -58,7 +268,14 @@ class Server {
     }
 
     /**
-     * Closes the server socket.
+     * Closes the server socket, leaves the cluster (see {@link ServerCluster#shutdown()}), lets the games in progress
+     * finish (see {@link #drain()}), stops pairing clients into rooms (see {@link ServerLobby#shutdown()}), writes
+     * the snapshot of the queue and rooms (see {@link ServerSnapshot#write(ServerLobby)}), stops broadcasting to
+     * spectators (see {@link ServerSpectators#shutdown()}), commits the journal (see {@link ServerJournal#close()}),
+     * writes out player statistics (see {@link PlayerStore#close()}), stops the event loop threads in NIO mode (see
+     * {@link NioServer#shutdown()}) and the shared writer threads and their watchdog otherwise (see
+     * {@link ServerClient#stopWriters()}), stops serving metrics (see {@link ServerMetrics#shutdown()}) and writes out
+     * the log; see {@link ServerLog#shutdown()}.
      */
     static void shutdown() {
         if (serverSocket != null) {
@@ -68,103 +285,233 @@ class Server {
                 // ignore
             }
             serverSocket = null;
+            ServerCluster.shutdown();
+            drain();
+            lobby.shutdown();
+            for (ServerGame room : lobby.rooms) {
+                try {
+                    room.thread.join();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            ServerSnapshot.write(lobby);
+            ServerSpectators.shutdown();
+            ServerJournal.close();
+            PlayerStore.close();
+            NioServer.shutdown();
+            ServerClient.stopWriters();
+            ServerMetrics.shutdown();
+
+            ServerLog.log(LogLevel.INFO, "Server stopped");
+            ServerLog.shutdown();
+        }
+    }
 
-            System.out.print("Server stopped\n");
+    /**
+     * Stops starting new games (see {@link ServerLobby#stopMatching()}) and waits up to {@link #drainTimeout} seconds
+     * for the games in progress to finish, checking every 100 ms; connected clients are still served in the meantime.
+     * Games still in progress afterwards are kept in the snapshot; see {@link ServerSnapshot#write(ServerLobby)}.
+     */
+    static void drain() {
+        lobby.stopMatching();
+        int active = ServerMetrics.getActiveGamesNow();
+        if (active == 0 || drainTimeout == 0) {
+            return;
+        }
+
+        ServerLog.log(LogLevel.INFO, "Draining: waiting up to %d seconds for %d games in progress to finish",
+                drainTimeout, active);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeout);
+        while (active > 0 && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            active = ServerMetrics.getActiveGamesNow();
+        }
+        if (active > 0) {
+            ServerLog.log(LogLevel.WARNING, "Drained with %d games still in progress", active);
+        } else {
+            ServerLog.log(LogLevel.INFO, "Drained: all games finished");
         }
     }
 
     /**
-     * Initializes the client and sends them their position in queue (if applicable).
+     * Adds the client to the end of the queue and sends them their position in queue (if applicable); see
+     * {@link ServerLobby#join(ServerClient)}.
      * <p>
      * Should ONLY be called by {@link ServerClient#connect()}; call that method instead.
      *
      * @param client The client attempting to connect.
      * @return Boolean indicating success.
      */
-    synchronized static boolean connect(ServerClient client) {
-        client.clientId = ++ServerClient.lastClientId;
-
-        if (!Server.clients.add(client)) {
+    static boolean connect(ServerClient client) {
+        if (!lobby.join(client)) {
             return false;
         }
-        System.out.printf("%s connected: %s\n", client, client.socket.getInetAddress().getHostAddress());
-
-        if (Server.game.state == GameState.PLAYING || Server.game.state == GameState.WAITING_ON_WINNER) {
-            client.sendMessage(new byte[]{'Q', (byte) (Server.clients.size() - 1 - Server.game.getPlayerCount())});
-        }
+        ServerMetrics.connects.increment();
+        ServerLog.log(LogLevel.INFO, "%s connected: %s", client, client.socket.getInetAddress().getHostAddress());
         return true;
     }
 
     /**
-     * Removes the client from the game and updates the server/game state accordingly.
+     * Removes the client from their game room or the queue and updates the game state accordingly; see
+     * {@link ServerGame#leave(ServerClient)} and {@link ServerLobby#leave(ServerClient)}.
+     * <p>
+     * If the client is seated in a room, leaving is queued as a command for the room (see
+     * {@link ServerGame#execute(Runnable)}), which falls back to the queue if the client left the room in the
+     * meantime.
      * <p>
      * Should ONLY be called by {@link ServerClient#disconnect()}; call that method instead.
      *
      * @param client The client attempting to disconnect.
      */
-    synchronized static void disconnect(ServerClient client) {
-        int clientIndex = Server.clients.indexOf(client);
-        if (clientIndex == -1) {
+    static void disconnect(ServerClient client) {
+        ServerLog.log(LogLevel.INFO, "%s disconnected: %s", client, client.socket.getInetAddress().getHostAddress());
+        ServerMetrics.disconnects.increment();
+        ServerSpectators.watch(client, null);
+
+        // the client state was set before reading the room, see ServerGame#seatPlayers(List)
+        ServerGame game = client.game;
+        if (game != null) {
+            game.execute(() -> {
+                if (!game.leave(client)) {
+                    lobby.leave(client);
+                }
+            });
             return;
         }
-        Server.clients.remove(clientIndex);
-        System.out.printf("%s disconnected: %s\n", client, client.socket.getInetAddress().getHostAddress());
-
-        switch (Server.game.state) {
-            case PLAYING -> {
-                if (Server.game.playerX == client) {
-                    Server.game.playerX = null;
-                    Server.game.endGame(Server.game.playerO);
-                } else if (Server.game.playerO == client) {
-                    Server.game.playerO = null;
-                    Server.game.endGame(Server.game.playerX);
-                } else {
-                    Server.game.sendQueueUpdates(clientIndex);
-                }
-            }
-            case WAITING_ON_WINNER -> {
-                if (Server.game.lastWinner == client) {
-                    Server.game.restartGame(client, false);
-                    Server.game.lastWinner = null;
-                } else {
-                    Server.game.sendQueueUpdates(clientIndex);
-                }
-            }
+        lobby.leave(client);
+    }
+
+    /**
+     * Queues a move for the client's room, if they are seated in one; see
+     * {@link ServerGame#playTurn(ServerClient, int)}.
+     * <p>
+     * Moves and replies from the winner are only queued as commands for the client's room (see
+     * {@link ServerGame#execute(Runnable)}), so the calling thread never waits on a game.
+     * <p>
+     * Called by the client's decoder; see {@link ServerDecoder}.
+     *
+     * @param client The client sending the move.
+     * @param square The square the client wants to play, 0-8.
+     */
+    static void receiveMove(ServerClient client, int square) {
+        ServerGame game = client.game;
+        if (game != null) {
+            game.execute(() -> game.playTurn(client, square));
         }
     }
 
     /**
-     * Parses the received byte(s) and updates the server/game state accordingly.
+     * Queues the reply of the winner for the client's room, if they are seated in one; see
+     * {@link ServerGame#restartGame(ServerClient, boolean)}.
      * <p>
-     * Called by {@link ServerClient#receiveMessage()}; see that method.
+     * Called by the client's decoder; see {@link ServerDecoder}.
      *
-     * @param client   The client sending the message.
-     * @param nextByte The byte received from the client.
-     * @return Boolean indicating success.
+     * @param client    The client sending the reply.
+     * @param playAgain Whether the client wants to play again.
      */
-    synchronized static boolean receiveMessage(ServerClient client, int nextByte) {
-        // Turn – Client chooses square _ for their move
-        // 1-9, with 1=top left, 2=top middle, 3=top right, 4=center left, … 9=bottom right
-        if (nextByte >= 1 && nextByte <= 9) {
-            Server.game.playTurn(client, nextByte - 1); // subtract 1 to convert to array index
-            return true;
+    static void receivePlayAgain(ServerClient client, boolean playAgain) {
+        ServerGame game = client.game;
+        if (game != null) {
+            game.execute(() -> game.restartGame(client, playAgain));
         }
+    }
 
-        // Does the winner want to play again or not?
-        // `Y` = yes, `N` = no
-        boolean playAgain = nextByte == 'Y';
-        if (playAgain || nextByte == 'N') {
-            Server.game.restartGame(client, playAgain);
-            return true;
+    /**
+     * Queues a full board for the client from their room, if they are seated in one; see
+     * {@link ServerGame#resync(ServerClient)}.
+     * <p>
+     * Called by the client's decoder; see {@link ServerDecoder}.
+     *
+     * @param client The client asking for the board.
+     */
+    static void receiveResync(ServerClient client) {
+        ServerGame game = client.game;
+        if (game != null) {
+            game.execute(() -> game.resync(client));
         }
+    }
 
-        // Leave/disconnect (can occur mid-game)
-        // `Q` (or just close socket)
-        if (nextByte == 'Q') {
-            return false;
+    /**
+     * Answers the client's hello by switching them to the highest protocol version both sides support, if that is
+     * later than version 1; see {@link Protocol#VERSION} and {@link ServerClient#upgrade(int)}. A queued client is
+     * then told their exact position, in case they were told 255 before; see
+     * {@link ServerLobby#upgraded(ServerClient)}.
+     * <p>
+     * Called by the client's decoder; see {@link ServerDecoder}.
+     *
+     * @param client  The client saying hello.
+     * @param version The highest protocol version the client supports.
+     * @return The protocol version chosen.
+     */
+    static int receiveHello(ServerClient client, int version) {
+        int chosen = Math.max(1, Math.min(version, Protocol.VERSION));
+        if (chosen > 1) {
+            client.upgrade(chosen);
+            lobby.upgraded(client);
         }
+        ServerLog.log(LogLevel.DEBUG, "%s speaks protocol version %d", client, chosen);
+        return chosen;
+    }
 
-        System.out.printf("WARNING: Received unrecognized byte from %s: %s\n", client, nextByte);
-        return false;
+    /**
+     * Switches board deltas for the client on or off; see {@link ServerClient#setDeltas(boolean)}.
+     * <p>
+     * Called by the client's decoder; see {@link ServerDecoder}.
+     *
+     * @param client The client asking for deltas.
+     * @param deltas Whether boards should be sent as deltas where possible.
+     */
+    static void receiveDeltas(ServerClient client, boolean deltas) {
+        client.setDeltas(deltas);
+        ServerLog.log(LogLevel.DEBUG, "%s %s board deltas", client, deltas ? "enabled" : "disabled");
+    }
+
+    /**
+     * Lets the client watch the room with the passed {@code roomId} while they are queued, or stops them watching if
+     * there is no such room; see {@link ServerClient#watch(ServerGame)}.
+     * <p>
+     * Called by the client's decoder; see {@link ServerDecoder}.
+     *
+     * @param client The client asking to watch.
+     * @param roomId The ID of the room to watch, or 0 to stop watching.
+     */
+    static void receiveWatch(ServerClient client, int roomId) {
+        ServerGame room = roomId >= 1 && roomId <= lobby.rooms.length ? lobby.rooms[roomId - 1] : null;
+        client.watch(room);
+        ServerLog.log(LogLevel.DEBUG, "%s watches %s", client, room == null ? "no room" : room);
+    }
+
+    /**
+     * Identifies the client as the player with the passed {@code name}; see {@link PlayerStore#identify(String)}. If
+     * the player was queued or playing when the server last stopped, puts them back there; see
+     * {@link ServerSnapshot#identified(ServerClient, String)}.
+     * <p>
+     * Called by the client's decoder; see {@link ServerDecoder}.
+     *
+     * @param client The client identifying themselves.
+     * @param name   The name of the player.
+     * @return Boolean indicating success; {@code false} if the name is invalid or the client already identified
+     * themselves.
+     */
+    static boolean receiveName(ServerClient client, String name) {
+        if (client.playerName != null) {
+            ServerLog.log(LogLevel.WARNING, "%s identified themselves twice", client);
+            return false;
+        }
+        if (!PlayerStore.isValidName(name)) {
+            ServerLog.log(LogLevel.WARNING, "Received invalid name from %s: %s", client, name);
+            return false;
+        }
+        client.playerId = PlayerStore.identify(name);
+        client.playerName = name;
+        ServerLog.log(LogLevel.INFO, "%s identified as %s", client, name);
+        // the client may have been matched before their name arrived; a game that starts later journals it itself
+        ServerGame game = client.game;
+        if (game != null) {
+            game.execute(() -> game.identified(client));
+        }
+        ServerSnapshot.identified(client, name);
+        return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+import java.util.List;
+
+class ServerBot extends ServerClient {
+    /**
+     * A perfect-play opponent that the server seats in a room when a client has been waiting alone for too long; see
+     * {@link ServerGame#seatBot(ServerClient, int)}.
+     * <p>
+     * The bot has no socket: it takes a seat like any other client, and "receives" the same messages as one, reacting
+     * to them on the room thread by queueing the same commands a connected client's messages would; its moves are
+     * looked up in {@link PerfectPlay}. The bot never joins the queue: it leaves once its game ends in a loss or tie,
+     * or once it is left alone in the room.
+     *
+     * @param clientId The ID of the bot; see {@link ServerLobby#nextClientId()}.
+     */
+    ServerBot(int clientId) {
+        super(null);
+        this.clientId = clientId;
+        state = ClientState.CONNECTED;
+    }
+
+    /**
+     * Seats the bot in the passed {@code room}; see {@link ServerGame#seatPlayers(List)}. Must be called on the room
+     * thread.
+     *
+     * @param room The room to take a seat in.
+     */
+    void join(ServerGame room) {
+        readyTime = System.nanoTime();
+        room.seatPlayers(List.of(this));
+    }
+
+    /**
+     * Leaves the bot's room, if it is still alone in it waiting for another player. Must be called on the room thread.
+     */
+    void leaveIfAlone() {
+        ServerGame game = this.game;
+        if (game != null && game.state == GameState.WAITING_FOR_PLAYERS && game.getPlayerCount() == 1) {
+            state = ClientState.DISCONNECTED;
+            ServerLog.log(LogLevel.INFO, "%s: %s (bot) left.", game, this);
+            game.leave(this);
+        }
+    }
+
+    /**
+     * Reacts to a message from the room, as a connected client would; see {@link #queueMessage(byte[])}.
+     */
+    @Override
+    void sendMessage(byte[] bytes) {
+        queueMessage(bytes);
+    }
+
+    /**
+     * Reacts to a message from the room, as a connected client would:
+     * <ul>
+     *     <li>On its turn, plays the best move (see {@link PerfectPlay#bestMove(Bitboard)}).</li>
+     *     <li>After a win, chooses to play again.</li>
+     *     <li>After a loss or tie, disconnects, so that it is not queued.</li>
+     *     <li>When waiting for another player, leaves if it is still alone by then; see {@link #leaveIfAlone()}.</li>
+     * </ul>
+     * Moves and replies are queued as commands for the room (see {@link ServerGame#execute(Runnable)}), as the room is
+     * in the middle of a command when it sends a message.
+     */
+    @Override
+    void queueMessage(byte[] bytes) {
+        ServerGame game = this.game;
+        if (game == null || state != ClientState.CONNECTED) {
+            return;
+        }
+
+        switch (bytes[0]) {
+            case 'w' -> game.execute(this::leaveIfAlone);
+            case 'W' -> game.execute(() -> game.restartGame(this, true));
+            case 'L', 'T' -> state = ClientState.DISCONNECTED;
+            default -> {
+                // "game starting" (11 bytes) and board state (10 bytes) messages end with whose turn it is
+                boolean yourTurn = (bytes.length == 10 || bytes.length == 11) && bytes[bytes.length - 1] == 1;
+                if (yourTurn) {
+                    game.execute(() -> game.playTurn(this, PerfectPlay.bestMove(game.board)));
+                }
+            }
+        }
+    }
+
+    @Override
+    void flushMessages() {
+        // nothing is buffered
+    }
+
+    @Override
+    void disconnect() {
+        state = ClientState.DISCONNECTED;
+    }
+}
@@ -2,33 +2,119 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 class ServerClient {
     static int lastClientId = 0;
     int clientId;
 
-    ClientState state = ClientState.CONNECTING;
+    volatile ClientState state = ClientState.CONNECTING;
+    volatile ServerGame game = null;
+    long readyTime = 0;
+    long queueTicket = 0;
+
+    /**
+     * The last position in the queue the client was told (-1 if none yet), capped at 255 ("lots") for clients that
+     * speak protocol version 1 (see {@link Protocol#queue(int)}); only set with the lobby lock held, see
+     * {@link ServerLobby#sendQueueUpdates()}.
+     */
+    int sentPosition = -1;
+
+    // the version 1 queue position message, reused under sendLock; see #sendPosition(int)
+    final byte[] positionFrame = {'Q', 0};
     Socket socket;
     InputStream in;
-    OutputStream out;
+    volatile OutputStream out;
 
     Thread thread;
 
+    // the ID and name of the player the client identified themselves as (see PlayerStore), or 0 and null if they have
+    // not; the ID is also 0 if no statistics are kept
+    volatile int playerId = 0;
+    volatile String playerName = null;
+
+    // the client's position in the queue before the server restarted, if they were put back there, otherwise -1; only
+    // used with the lobby lock held, see ServerLobby#restorePosition(ServerClient, int)
+    int restoreRank = -1;
+
+    // decodes the messages received from the client, keeping any that have only partly arrived between reads
+    final ServerDecoder decoder = new ServerDecoder(this);
+
+    /**
+     * Encodes the messages sent to the client in their protocol version (see {@link Protocol#VERSION}), only used
+     * while holding {@link #sendLock}; see {@link #upgrade(int)} and {@link #setDeltas(boolean)}.
+     */
+    final MessageEncoder encoder = new MessageEncoder();
+    final Object sendLock = new Object();
+
+    // the bytes queued for the client (not yet accepted by the socket) at which they are slow, back to normal, and
+    // evicted right away, and how long they may stay slow before being evicted; see checkOutbound(int)
+    static final int HIGH_WATERMARK = 64 * 1024;
+    static final int LOW_WATERMARK = 16 * 1024;
+    static final int MAX_OUTBOUND = 256 * 1024;
+    static final long SLOW_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The writer threads shared by all clients in blocking mode, where a writer thread of each client's own would
+     * double the platform threads; see {@link #startWriters()} and {@link #writeQueued()}. In virtual mode, every
+     * client has a writer thread of its own instead; see {@link #drain()}.
+     */
+    static ExecutorService writers = null;
+
+    /**
+     * The clients whose outgoing buffer is being written to their socket right now, watched by {@link #watchdog} for
+     * writes that take longer than {@link #SLOW_TIMEOUT}; see {@link #watchWrites()}.
+     */
+    static final Set<ServerClient> writingClients = ConcurrentHashMap.newKeySet();
+    static Thread watchdog = null;
+
+    /**
+     * The outgoing buffer messages are appended to, and the one being written to the socket (along with how many
+     * bytes are in it); swapped by the writer, and only used while holding {@link #outboundLock}, see
+     * {@link #writeOutbound()}.
+     */
+    ByteBuffer outbound = ByteBuffer.allocate(256);
+    ByteBuffer writing = ByteBuffer.allocate(256);
+    int writingBytes = 0;
+    final Object outboundLock = new Object();
+    Thread writer = null;
+    boolean writeQueued = false; // whether a shared writer has been asked to write, see flushMessages()
+
+    volatile long slowSince = 0;
+    volatile long writeSince = 0; // when the write in progress started, or 0 if none; see writeOutbound()
+    volatile boolean evicted = false; // evicted, or a write failed; nothing more is sent to the client either way
+
+    // the room the client watches while queued, and the last state of it sent to them; see ServerSpectators
+    volatile ServerGame watching = null;
+    ByteBuffer watchedFrame = null; // only used by the broadcast thread
+
+    // string representations of the client for each role tag (none, "Winner", "Player X" and "Player O"), built once
+    // the client has an ID; see toString()
+    final String[] names = new String[4];
+
     /**
-     * Starts a new thread that runs {@link #connect()} to initialize the client, then listens for messages from the
-     * client indefinitely; see {@link #receiveMessage()}.
-     * <p>
-     * Once a message fails to be received or is invalid, stops listening for messages and calls {@link #disconnect()}.
-     *
      * @param socket Socket to associate with the client.
      */
     ServerClient(Socket socket) {
         this.socket = socket;
+    }
 
-        thread = new Thread(() -> {
+    /**
+     * Starts a new thread (see {@link Server#startThread(Runnable)}) that runs {@link #connect()} to initialize the
+     * client, then listens for messages from the client indefinitely; see {@link #receiveMessage()}.
+     * <p>
+     * Once a message fails to be received or is invalid, stops listening for messages and calls {@link #disconnect()}.
+     */
+    void start() {
+        thread = Server.startThread(() -> {
             if (!connect()) {
-                System.out.printf("WARNING: %s failed to connect: %s\n", this,
+                ServerLog.log(LogLevel.WARNING, "%s failed to connect: %s", this,
                         socket.getInetAddress().getHostAddress());
                 return;
             }
@@ -38,33 +124,59 @@ class ServerClient {
             }
             disconnect();
         });
-        thread.start();
     }
 
     /**
-     * Builds and returns a string representation of the client, including client ID and special game state data
-     * (such as 'Winner', 'Player X', etc.).
+     * Returns a string representation of the client, including client ID and special game state data (such as
+     * 'Winner', 'Player X', etc.) from the game room they are seated in.
+     * <p>
+     * Each of the possible strings is only built once (see {@link #names}), as clients are logged all the time; see
+     * {@link ServerLog#capture(Object)}.
      *
      * @return A string representation of the client.
      */
     @Override
     public String toString() {
-        String identifier = "Client #" + clientId;
-        if (Server.game.state == GameState.WAITING_ON_WINNER && Server.game.lastWinner == this) {
-            return identifier + " (Winner)";
+        int tag = getTag();
+        String name = names[tag];
+        if (name == null) {
+            name = "Client #" + clientId + switch (tag) {
+                case 1 -> " (Winner)";
+                case 2 -> " (Player X)";
+                case 3 -> " (Player O)";
+                default -> "";
+            };
+            if (clientId != 0) { // not yet assigned; see ServerLobby#join(ServerClient)
+                names[tag] = name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * @return The role tag of the client in the game room they are seated in: 0 for none, 1 for the winner, 2 for
+     * player X and 3 for player O.
+     */
+    int getTag() {
+        ServerGame game = this.game;
+        if (game == null) {
+            return 0;
+        }
+        if (game.state == GameState.WAITING_ON_WINNER && game.lastWinner == this) {
+            return 1;
         }
-        if (Server.game.state == GameState.PLAYING) {
-            if (Server.game.playerX == this) {
-                return identifier + " (Player X)";
-            } else if (Server.game.playerO == this) {
-                return identifier + " (Player O)";
+        if (game.state == GameState.PLAYING) {
+            if (game.playerX == this) {
+                return 2;
+            } else if (game.playerO == this) {
+                return 3;
             }
         }
-        return identifier;
+        return 0;
     }
 
     /**
-     * Sets up the client socket input and output streams, and calls the synchronized
+     * Sets up the client socket input and output streams and the writer (see {@link #startWriter()}), and calls the
      * {@link Server#connect(ServerClient)} method for thread-safe server/game state updates.
      *
      * @return Boolean indicating success.
@@ -74,23 +186,24 @@ class ServerClient {
 
         try {
             in = socket.getInputStream();
-            out = socket.getOutputStream();
+            out = socket.getOutputStream(); // messages are batched in the outgoing buffer instead, see writeOutbound()
         } catch (IOException e) {
             disconnect();
             return false;
         }
 
+        // the client must be connected before it joins the queue, where it may be seated in a room right away
+        state = ClientState.CONNECTED;
+        startWriter();
         if (!Server.connect(this)) {
             disconnect();
             return false;
         }
-
-        state = ClientState.CONNECTED;
         return true;
     }
 
     /**
-     * Closes the client socket and its input and output streams, and calls the synchronized
+     * Closes the client socket and its input and output streams, and calls the
      * {@link Server#disconnect(ServerClient)} method for thread-safe server/game state updates.
      */
     void disconnect() {
@@ -115,6 +228,7 @@ class ServerClient {
             }
             out = null;
         }
+        flushMessages(); // lets the writer see the client is gone
 
         if (socket == null) {
             return;
@@ -131,8 +245,9 @@ class ServerClient {
     }
 
     /**
-     * Waits for a byte from the client by calling {@link InputStream#read()}, then sends the received byte over to the
-     * {@link Server#receiveMessage(ServerClient, int)} method for thread-safe server/game state updates.
+     * Waits for bytes from the client, then decodes every message that has fully arrived with a single read (see
+     * {@link MessageDecoder#read(InputStream)}) and hands them to {@link Server} for thread-safe server/game state
+     * updates; see {@link ServerDecoder}.
      *
      * @return Boolean indicating success.
      */
@@ -142,12 +257,7 @@ class ServerClient {
         }
 
         try {
-            int nextByte;
-            if ((nextByte = in.read()) == -1) {
-                return false;
-            }
-
-            return Server.receiveMessage(this, nextByte);
+            return decoder.read(in);
         } catch (IOException e) {
             // ignore
         }
@@ -155,16 +265,447 @@ class ServerClient {
     }
 
     /**
-     * Sends a message to the client.
+     * Sends a message to the client, along with any messages queued before it, in a single write; see
+     * {@link #queueMessage(byte[])} and {@link #flushMessages()}.
+     * <p>
+     * The passed {@code bytes} are copied (or written) before this method returns, so callers may reuse the array.
+     * <p>
+     * Records how long sending took; see {@link ServerMetrics#sendTime}.
      */
     void sendMessage(byte[] bytes) {
+        long startTime = System.nanoTime();
+        queueMessage(bytes);
+        flushMessages();
+        ServerMetrics.sendTime.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Queues a message to be sent to the client by the next {@link #flushMessages()}, without writing to the socket.
+     * <p>
+     * Messages are built in protocol version 1, and translated to the client's protocol version while holding
+     * {@link #sendLock}; see {@link MessageEncoder#encode(byte[])}.
+     */
+    void queueMessage(byte[] bytes) {
+        synchronized (sendLock) {
+            writeMessage(encoder.encode(bytes));
+        }
+    }
+
+    /**
+     * Switches the client to the passed protocol {@code version}, and answers their hello with the version chosen,
+     * as the first message in that version; see {@link Protocol#HELLO}.
+     * <p>
+     * Messages queued by other threads are sent either before the answer in the old version or after it in the new
+     * one, as the switch happens while holding {@link #sendLock}.
+     *
+     * @param version The protocol version to switch to.
+     */
+    void upgrade(int version) {
+        synchronized (sendLock) {
+            encoder.version = version;
+            writeMessage(new byte[]{Protocol.HELLO, 1, (byte) version});
+        }
+        flushMessages();
+    }
+
+    /**
+     * Switches board deltas for the client on or off, and answers their request; see {@link Protocol#DELTAS}. The
+     * first board after the switch is sent in full.
+     *
+     * @param deltas Whether boards are sent as deltas where possible.
+     */
+    void setDeltas(boolean deltas) {
+        synchronized (sendLock) {
+            encoder.deltas = deltas;
+            encoder.resync();
+            writeMessage(new byte[]{Protocol.DELTAS, 1, (byte) (deltas ? 1 : 0)});
+        }
+        flushMessages();
+    }
+
+    /**
+     * Answers the client's request to watch the passed {@code room} (see {@link Protocol#WATCHING}), then moves them to
+     * its spectators, so the answer comes before the first state of the room; see
+     * {@link ServerSpectators#watch(ServerClient, ServerGame)}.
+     *
+     * @param room The room to watch, or {@code null} to stop watching.
+     */
+    void watch(ServerGame room) {
+        synchronized (sendLock) {
+            writeMessage(new byte[]{Protocol.WATCHING, 1, (byte) (room == null ? 0 : room.roomId)});
+        }
+        flushMessages();
+        ServerSpectators.watch(this, room);
+    }
+
+    /**
+     * Queues a frame shared with other clients (already in protocol version 2, and never modified) to be sent along
+     * with any messages queued before it; see {@link ServerSpectators#broadcast()}. Only called by the broadcast
+     * thread.
+     * <p>
+     * The frame is copied into the outgoing buffer in place, without moving its position. A slow client (see
+     * {@link #isSlow()}) is skipped, and sent the latest frame once the writer thread has caught up.
+     *
+     * @param frame The frame to send.
+     * @return Boolean indicating whether the frame was queued; {@code false} if it was skipped or the client is gone.
+     */
+    boolean sendShared(ByteBuffer frame) {
+        synchronized (outboundLock) {
+            if (isSlow()) {
+                checkOutbound(outbound.position() + writingBytes); // evicts the client once slow for too long
+                return false;
+            }
+            if (!reserveOutbound(frame.limit())) {
+                return false;
+            }
+            outbound.put(outbound.position(), frame, 0, frame.limit());
+            outbound.position(outbound.position() + frame.limit());
+        }
+        flushMessages();
+        return true;
+    }
+
+    /**
+     * @return Whether the client can be moved to another server of the cluster: they are connected and speak protocol
+     * version 2, which has {@link Protocol#REDIRECT}; see {@link ServerCluster}.
+     */
+    boolean canRedirect() {
+        return state == ClientState.CONNECTED && encoder.version >= 2;
+    }
+
+    /**
+     * @return Whether the client is told their exact position in the queue, rather than one capped at 255, as they
+     * speak protocol version 2; see {@link Protocol#queue(int)}.
+     */
+    boolean exactPositions() {
+        return encoder.version >= 2;
+    }
+
+    /**
+     * Sends the client their position in the queue, exactly in protocol version 2 and capped at 255 ("lots") in
+     * version 1; see {@link Protocol#queue(int)}.
+     * <p>
+     * Records how long sending took; see {@link ServerMetrics#sendTime}.
+     *
+     * @param position The number of clients ahead of the client in the queue.
+     */
+    void sendPosition(int position) {
+        long startTime = System.nanoTime();
+        synchronized (sendLock) {
+            if (encoder.version >= 2) {
+                writeMessage(Protocol.queue(position));
+            } else {
+                positionFrame[1] = (byte) Math.min(position, 255);
+                writeMessage(positionFrame);
+            }
+        }
+        flushMessages();
+        ServerMetrics.sendTime.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Tells the client to reconnect to the server at the passed {@code host} and {@code port} of the cluster (see
+     * {@link Protocol#REDIRECT}); the client must already have left the queue or their room. They are disconnected
+     * here once they close the connection.
+     *
+     * @param host The host of the server to move to.
+     * @param port The port of the server to move to.
+     */
+    void redirect(String host, int port) {
+        synchronized (sendLock) {
+            writeMessage(Protocol.address(Protocol.REDIRECT, host, port));
+        }
+        flushMessages();
+        ServerMetrics.redirects.increment();
+        ServerLog.log(LogLevel.INFO, "%s moved to %s:%d", this, host, port);
+    }
+
+    /**
+     * Makes the next board sent to the client be sent in full; see {@link Protocol#RESYNC}.
+     */
+    void resyncBoard() {
+        synchronized (sendLock) {
+            encoder.resync();
+        }
+    }
+
+    /**
+     * Appends a message, already in the client's protocol version, to the outgoing buffer, to be written to the
+     * socket by the writer thread once {@link #flushMessages()} wakes it up; never blocks on the socket.
+     *
+     * @param bytes The message to append.
+     */
+    void writeMessage(byte[] bytes) {
+        synchronized (outboundLock) {
+            if (reserveOutbound(bytes.length)) {
+                outbound.put(bytes);
+            }
+        }
+    }
+
+    /**
+     * Makes room for the passed {@code length} of bytes in the outgoing buffer, growing it if needed, and checks the
+     * bytes queued for the client against the watermarks; see {@link #checkOutbound(int)}. Only called while holding
+     * {@link #outboundLock}.
+     *
+     * @param length The number of bytes to append.
+     * @return Boolean indicating whether the bytes may be appended; {@code false} if the client is gone or evicted.
+     */
+    boolean reserveOutbound(int length) {
+        if (evicted || state != ClientState.CONNECTED || !checkOutbound(outbound.position() + writingBytes + length)) {
+            return false;
+        }
+        if (outbound.remaining() < length) {
+            int capacity = Math.max(outbound.capacity() * 2, outbound.position() + length);
+            outbound = ByteBuffer.allocate(capacity).put(outbound.flip());
+        }
+        return true;
+    }
+
+    /**
+     * Has the outgoing buffer written to the socket: wakes up the client's writer thread in virtual mode (see
+     * {@link #drain()}), or hands the client to a shared writer in blocking mode, unless one already has it; see
+     * {@link #writeQueued()}.
+     */
+    void flushMessages() {
+        Thread writer = this.writer;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            return;
+        }
+        ExecutorService writers = ServerClient.writers;
+        if (writers == null) {
+            return;
+        }
+        synchronized (outboundLock) {
+            if (writeQueued || outbound.position() == 0) {
+                return;
+            }
+            writeQueued = true;
+        }
+        writers.execute(this::writeQueued);
+    }
+
+    /**
+     * Starts the writer threads shared by all clients in blocking mode, one per CPU core (see {@link #writers}), and
+     * the thread that evicts clients whose writes stall, in blocking and virtual mode; see {@link #watchWrites()}.
+     */
+    static void startWriters() {
+        if (Server.mode == ServerMode.BLOCKING) {
+            writers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "ServerWriter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        watchdog = new Thread(ServerClient::watchWrites, "ServerWriterWatchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Stops the shared writer threads and the watchdog, if any; see {@link #startWriters()}.
+     */
+    static void stopWriters() {
+        if (writers != null) {
+            writers.shutdownNow();
+            writers = null;
+        }
+        if (watchdog != null) {
+            watchdog.interrupt();
+            watchdog = null;
+        }
+    }
+
+    /**
+     * Evicts every client whose write has been stuck in the socket for longer than {@link #SLOW_TIMEOUT} (see
+     * {@link #evict(int)}), checking once a second until interrupted: a blocking write to a client that stopped
+     * reading never returns, and the watermarks (see {@link #checkOutbound(int)}) are only checked as more messages
+     * are sent, which may never happen. Evicting the client closes its socket, which fails the write and frees the
+     * writer thread.
+     */
+    static void watchWrites() {
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            long now = System.nanoTime();
+            for (ServerClient client : writingClients) {
+                long since = client.writeSince;
+                if (since != 0 && now - since > SLOW_TIMEOUT) {
+                    client.evict(client.writingBytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new virtual thread (see {@link Server#startThread(Runnable)}) that writes the outgoing buffer to the
+     * socket whenever messages are flushed (see {@link #drain()}), in virtual mode only; in blocking mode, the shared
+     * writer threads do (see {@link #writers}), and in NIO mode, the event loop does.
+     */
+    void startWriter() {
+        if (Server.mode == ServerMode.VIRTUAL) {
+            writer = Server.startThread(this::drain);
+        }
+    }
+
+    /**
+     * Writes the outgoing buffer to the socket, over and over, parking whenever there is nothing to write, until the
+     * client disconnects. Runs on the client's writer thread in virtual mode, so rooms and other threads that send
+     * messages never wait on the socket.
+     */
+    void drain() {
+        while (state == ClientState.CONNECTED && !evicted) {
+            if (!writeOutbound()) {
+                LockSupport.park();
+            }
+        }
+    }
+
+    /**
+     * Writes the outgoing buffer to the socket until it stays empty, then lets the next {@link #flushMessages()}
+     * hand the client to a shared writer again. Runs on a shared writer thread in blocking mode; see
+     * {@link #writers}.
+     * <p>
+     * A client whose socket does not take its messages only holds up the shared writer until it is evicted, after
+     * {@link #SLOW_TIMEOUT} at most (see {@link #watchWrites()}), which closes its socket and fails the write.
+     */
+    void writeQueued() {
+        while (true) {
+            if (state == ClientState.CONNECTED && !evicted && writeOutbound()) {
+                continue;
+            }
+            synchronized (outboundLock) {
+                if (outbound.position() == 0 || state != ClientState.CONNECTED || evicted) {
+                    writeQueued = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Swaps the outgoing buffer for an empty one and writes it to the socket; only ever called by one thread at a
+     * time, see {@link #drain()} and {@link #writeQueued()}.
+     * <p>
+     * If the write fails, closes the connection (see {@link #abort()}); the failure only ever ends this client's
+     * connection. A write that does not return is watched for; see {@link #watchWrites()}.
+     *
+     * @return Boolean indicating whether anything was written.
+     */
+    boolean writeOutbound() {
+        synchronized (outboundLock) {
+            ByteBuffer full = outbound;
+            outbound = writing;
+            writing = full;
+            writingBytes = writing.position();
+        }
+        if (writingBytes == 0) {
+            return false;
+        }
+
+        OutputStream out = this.out; // may be closed by another room or client thread, see disconnect()
+        writeSince = System.nanoTime();
+        writingClients.add(this);
         try {
-            out.write(bytes);
+            if (out == null) {
+                throw new IOException("Socket closed");
+            }
+            out.write(writing.array(), 0, writingBytes);
+            out.flush();
         } catch (IOException e) {
-            if (state != ClientState.DISCONNECTING) {
-                System.out.printf("ERROR: Failed to send message to %s: %s\n", this, Arrays.toString(bytes));
-                System.exit(-1);
+            if (state == ClientState.CONNECTED && !evicted) {
+                ServerLog.log(LogLevel.WARNING, "Failed to send messages to %s: %s", this, e.getMessage());
+                abort();
+            }
+            evicted = true;
+            return false;
+        } finally {
+            writingClients.remove(this);
+            writeSince = 0;
+        }
+
+        boolean caughtUp;
+        synchronized (outboundLock) {
+            // a buffer grown for a burst is not kept around once the burst is written
+            writing = writing.capacity() > 4096 ? ByteBuffer.allocate(256) : writing.clear();
+            writingBytes = 0;
+            boolean wasSlow = isSlow();
+            checkOutbound(outbound.position());
+            caughtUp = wasSlow && !isSlow();
+        }
+        if (caughtUp && watching != null) {
+            ServerSpectators.wake(); // send the latest state skipped while the client was slow
+        }
+        return true;
+    }
+
+    /**
+     * Checks the bytes queued for the client (not yet accepted by the socket) against the watermarks. Once above
+     * {@link #HIGH_WATERMARK}, the client is slow (see {@link #isSlow()}) until the bytes queued drop back to
+     * {@link #LOW_WATERMARK} or below; a client that stays slow for longer than {@link #SLOW_TIMEOUT}, or goes over
+     * {@link #MAX_OUTBOUND}, is evicted; see {@link #evict(int)}.
+     * <p>
+     * Only called while holding the lock that guards the outgoing buffer.
+     *
+     * @param queued The number of bytes queued.
+     * @return Boolean indicating whether the client may stay.
+     */
+    boolean checkOutbound(int queued) {
+        if (queued <= LOW_WATERMARK) {
+            slowSince = 0;
+            return true;
+        }
+        if (queued <= HIGH_WATERMARK && slowSince == 0) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        if (slowSince == 0) {
+            slowSince = now;
+        }
+        if (queued > MAX_OUTBOUND || now - slowSince > SLOW_TIMEOUT) {
+            evict(queued);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the client has gone over the high watermark and not yet come back down to the low one; see
+     * {@link #checkOutbound(int)}. Messages that can be skipped (such as the states of a watched room) are not sent
+     * to slow clients.
+     */
+    boolean isSlow() {
+        return slowSince != 0;
+    }
+
+    /**
+     * Disconnects a client that does not keep up with the messages sent to them; see {@link #checkOutbound(int)}.
+     *
+     * @param queued The number of bytes queued for the client.
+     */
+    void evict(int queued) {
+        if (evicted) {
+            return;
+        }
+        evicted = true;
+        ServerLog.log(LogLevel.WARNING, "%s is not keeping up, disconnecting (%d bytes queued)", this, queued);
+        ServerMetrics.evictions.increment();
+        abort();
+    }
+
+    /**
+     * Closes the socket from any thread without waiting on it; the reader thread's next read fails, and it
+     * disconnects the client the usual way (see {@link #disconnect()}).
+     */
+    void abort() {
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
             }
         }
     }
-}
\ No newline at end of file
+}
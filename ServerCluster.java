@@ -0,0 +1,201 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+class ServerCluster {
+    static final long RECONNECT_DELAY = TimeUnit.SECONDS.toNanos(1);
+    static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    static String coordinatorHost = null;
+    static int coordinatorPort = 0;
+    static ServerLobby lobby = null;
+
+    static volatile boolean running = false;
+    static Thread thread = null;
+    static volatile Socket socket = null;
+    static OutputStream out = null; // only used while holding the ServerCluster class lock, see send(byte[])
+
+    // the load last reported to the coordinator, or -1 if none since connecting; only used by the lobby's tick thread
+    static int reportedAlone = -1;
+    static int reportedQueued = -1;
+    static long reportTime = 0;
+
+    /**
+     * Starts a thread (see {@link Server#startThread(Runnable)}) that registers the server with the cluster
+     * coordinator at the passed {@code address} and carries out the coordinator's transfers (see
+     * {@link #transfer(String, int)}), reconnecting every {@link #RECONNECT_DELAY} nanoseconds for as long as the
+     * connection is lost; see {@link Coordinator}.
+     *
+     * @param lobby   The lobby whose clients can be moved to other servers.
+     * @param address The host and port of the coordinator, as {@code host:port}.
+     */
+    static void start(ServerLobby lobby, String address) {
+        ServerCluster.lobby = lobby;
+        int separator = address.lastIndexOf(':');
+        coordinatorHost = address.substring(0, separator);
+        coordinatorPort = Integer.parseInt(address.substring(separator + 1));
+        running = true;
+        thread = Server.startThread(() -> {
+            while (running) {
+                if (!connect()) {
+                    LockSupport.parkNanos(RECONNECT_DELAY);
+                    continue;
+                }
+                ServerLog.log(LogLevel.INFO, "Joined the cluster at %s:%d", coordinatorHost, coordinatorPort);
+                receiveCommands();
+                disconnect();
+                if (running) {
+                    ServerLog.log(LogLevel.WARNING, "Lost connection to the cluster coordinator, reconnecting");
+                    LockSupport.parkNanos(RECONNECT_DELAY);
+                }
+            }
+        });
+    }
+
+    /**
+     * Connects to the coordinator and registers the port the server takes clients on, and the host they reach it at
+     * if one was given ({@link Protocol#NODE}; see {@link Server#advertisedHost}); the load is reported with the next
+     * queue updates; see {@link #report()}.
+     *
+     * @return Boolean indicating success.
+     */
+    static boolean connect() {
+        try {
+            Socket socket = new Socket(coordinatorHost, coordinatorPort);
+            socket.setTcpNoDelay(true);
+            synchronized (ServerCluster.class) {
+                out = socket.getOutputStream();
+                ServerCluster.socket = socket;
+            }
+            String host = Server.advertisedHost != null ? Server.advertisedHost : "";
+            send(Protocol.address(Protocol.NODE, host, Server.port));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection to the coordinator.
+     */
+    static void disconnect() {
+        synchronized (ServerCluster.class) {
+            Socket socket = ServerCluster.socket;
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            ServerCluster.socket = null;
+            out = null;
+        }
+    }
+
+    /**
+     * Reads commands from the coordinator until the connection is lost; commands of unknown types are skipped.
+     */
+    static void receiveCommands() {
+        Socket socket = ServerCluster.socket;
+        if (socket == null) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (running) {
+                int type = in.readUnsignedByte();
+                byte[] payload = new byte[in.readUnsignedByte()];
+                in.readFully(payload);
+                if (type == Protocol.TRANSFER && payload.length >= 3) {
+                    int port = (payload[0] & 0xFF) << 8 | payload[1] & 0xFF;
+                    transfer(new String(payload, 2, payload.length - 2, StandardCharsets.US_ASCII), port);
+                }
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Sends a message to the coordinator; a failure closes the connection, so the next read fails and the server
+     * reconnects.
+     *
+     * @param bytes The message to send.
+     */
+    static synchronized void send(byte[] bytes) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    /**
+     * Reports the number of clients waiting alone for an opponent and the number of clients queued that could be
+     * moved to another server ({@link Protocol#LOAD}), if either changed since the last report; see
+     * {@link ServerLobby#countWaitingAlone()} and {@link ServerLobby#countMovable()}. A load other than zero is
+     * reported again every {@link #REPORT_INTERVAL} nanoseconds, in case a transfer the coordinator counted on did not
+     * happen. Called by the lobby's tick thread after every queue update.
+     */
+    static void report() {
+        if (socket == null) {
+            reportedAlone = -1;
+            reportedQueued = -1;
+            return;
+        }
+
+        int alone = Math.min(lobby.countWaitingAlone(), 0xFFFF);
+        int queued = Math.min(lobby.countMovable(), 0xFFFF);
+        long now = System.nanoTime();
+        boolean due = (alone != 0 || queued != 0) && now - reportTime >= REPORT_INTERVAL;
+        if (alone == reportedAlone && queued == reportedQueued && !due) {
+            return;
+        }
+        reportedAlone = alone;
+        reportedQueued = queued;
+        reportTime = now;
+        send(new byte[]{Protocol.LOAD, 4, (byte) (alone >> 8), (byte) alone, (byte) (queued >> 8), (byte) queued});
+    }
+
+    /**
+     * Moves one waiting client to the server at the passed {@code host} and {@code port}, where a client is waiting
+     * alone for an opponent: the client at the front of the queue if any can be moved (see
+     * {@link ServerLobby#takeMovable()}), otherwise a client waiting alone in a room (see
+     * {@link ServerGame#redirectAlone(String, int)}).
+     *
+     * @param host The host of the server to move the client to.
+     * @param port The port of the server to move the client to.
+     */
+    static void transfer(String host, int port) {
+        ServerClient client = lobby.takeMovable();
+        if (client != null) {
+            client.redirect(host, port);
+            return;
+        }
+        ServerGame room = lobby.findWaitingAlone();
+        if (room != null) {
+            room.execute(() -> room.redirectAlone(host, port));
+        }
+    }
+
+    /**
+     * Stops reconnecting and closes the connection to the coordinator.
+     */
+    static void shutdown() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        disconnect();
+        LockSupport.unpark(thread);
+    }
+}
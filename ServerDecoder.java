@@ -0,0 +1,235 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class ServerDecoder extends MessageDecoder {
+    final ServerClient client;
+
+    // limits the messages handled from the client (see Server#rateLimit); replaced by the benchmarks, which decode far
+    // faster than any client
+    RateLimiter limiter = new RateLimiter(Server.rateLimit, Server.rateBurst, Server.floodLimit);
+    boolean throttled = false;
+
+    // the rate limit's verdict on the frame being decoded, taken when its first byte arrives, before it is checked;
+    // see frameLength(ByteBuffer) and RateLimiter#acquire()
+    boolean charged = false;
+    int allowed;
+
+    // the protocol version of the messages received; switched by the client's hello, see Protocol#VERSION
+    int version = 1;
+    boolean firstMessage = true;
+
+    /**
+     * Decodes the messages the server receives from the passed {@code client} into calls on {@link Server}; see
+     * {@link #handleFrame(ByteBuffer, int, int)}.
+     *
+     * @param client The client the messages come from.
+     */
+    ServerDecoder(ServerClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Checks a new frame against the client's rate limit (see {@link #limiter}) before anything else, including
+     * validating it, is done with it, once per frame however many reads it takes to arrive; see
+     * {@link #handleFrame(ByteBuffer, int, int)}. A client that keeps sending over the limit is disconnected for
+     * flooding; see {@link ServerMetrics#floods} and {@link RateLimiter#acquire()}.
+     */
+    @Override
+    int frameLength(ByteBuffer frames) {
+        if (!charged) {
+            charged = true;
+            allowed = limiter.acquire();
+        }
+        if (allowed == -1) {
+            ServerMetrics.floods.increment();
+            ServerLog.log(LogLevel.WARNING, "%s is flooding, disconnecting", client);
+            return -1;
+        }
+
+        if (version == 2) {
+            return frames.remaining() < 2 ? 0 : 2 + (frames.get(frames.position() + 1) & 0xFF);
+        }
+
+        int firstByte = frames.get(frames.position());
+        if (firstByte >= 1 && firstByte <= 9 || firstByte == 'Y' || firstByte == 'N' || firstByte == 'Q') {
+            return 1;
+        }
+        if (firstByte == Protocol.HELLO && firstMessage) {
+            return 2;
+        }
+        if (firstByte == 'P') {
+            if (frames.remaining() < 2) {
+                return 0;
+            }
+            int nameLength = frames.get(frames.position() + 1);
+            if (nameLength < 1 || nameLength > PlayerStore.MAX_NAME_LENGTH) {
+                ServerMetrics.rejected.increment();
+                ServerLog.log(LogLevel.WARNING, "Received invalid name length from %s: %s", client, nameLength);
+                return -1;
+            }
+            return 2 + nameLength;
+        }
+
+        ServerMetrics.rejected.increment();
+        ServerLog.log(LogLevel.WARNING, "Received unrecognized byte from %s: %s", client, firstByte & 0xFF);
+        return -1;
+    }
+
+    /**
+     * Handles the message, unless it is a move over the client's rate limit (see {@link #frameLength(ByteBuffer)}):
+     * such a move is dropped before the room is touched (see {@link ServerMetrics#throttled}), and answered as an
+     * invalid move, so that the client asks their player for it again; see {@link ServerGame#INVALID_FRAME}.
+     * <p>
+     * Other messages over the limit are still handled, as the client waits on their answer or the room on their
+     * decision (dropping a winner's reply would leave the room waiting on them for good); they only run up the
+     * client's debt towards being disconnected for flooding.
+     */
+    @Override
+    boolean handleFrame(ByteBuffer frames, int offset, int length) {
+        charged = false;
+        if (allowed == 1) {
+            throttled = false;
+        } else if (isMove(frames, offset)) {
+            ServerMetrics.throttled.increment();
+            if (!throttled) {
+                throttled = true;
+                ServerLog.log(LogLevel.WARNING, "%s is sending over %d messages per second, throttling", client,
+                        Server.rateLimit);
+            }
+            client.sendMessage(ServerGame.INVALID_FRAME);
+            return true;
+        }
+        return handleMessage(frames, offset, length);
+    }
+
+    /**
+     * @param frames The frames to decode.
+     * @param offset The index of the first byte of the frame.
+     * @return Boolean indicating whether the frame is a move, in the client's protocol version.
+     */
+    boolean isMove(ByteBuffer frames, int offset) {
+        int firstByte = frames.get(offset);
+        return version == 2 ? firstByte == Protocol.MOVE : firstByte >= 1 && firstByte <= 9;
+    }
+
+    /**
+     * Handles a message the client was allowed to send; see {@link #handleFrame(ByteBuffer, int, int)}.
+     *
+     * @param frames The frames to decode.
+     * @param offset The index of the first byte of the frame.
+     * @param length The length of the frame.
+     * @return Boolean indicating success.
+     */
+    boolean handleMessage(ByteBuffer frames, int offset, int length) {
+        boolean firstMessage = this.firstMessage;
+        this.firstMessage = false;
+        if (version == 2) {
+            return handleFrameVersion2(frames, offset, length);
+        }
+
+        int firstByte = frames.get(offset);
+
+        // Turn – Client chooses square _ for their move
+        // 1-9, with 1=top left, 2=top middle, 3=top right, 4=center left, … 9=bottom right
+        if (firstByte >= 1 && firstByte <= 9) {
+            Server.receiveMove(client, firstByte - 1); // subtract 1 to convert to array index
+            return true;
+        }
+
+        // Does the winner want to play again or not?
+        // `Y` = yes, `N` = no
+        if (firstByte == 'Y' || firstByte == 'N') {
+            Server.receivePlayAgain(client, firstByte == 'Y');
+            return true;
+        }
+
+        // Hello, asking to switch to a later protocol version; see Protocol#VERSION
+        // `V` followed by a byte with the highest version the client supports
+        // Only sent as the first message
+        if (firstByte == Protocol.HELLO && firstMessage) {
+            version = Server.receiveHello(client, frames.get(offset + 1) & 0xFF);
+            return true;
+        }
+
+        // Identify as a player, to keep statistics under a name
+        // `P` followed by a byte with the name length (1..16) and the name in ASCII (letters, digits, `_` and `-`)
+        // Only sent once, before or between games
+        if (firstByte == 'P') {
+            return Server.receiveName(client, getName(frames, offset + 2, length - 2));
+        }
+
+        // Leave/disconnect (can occur mid-game)
+        // `Q` (or just close socket)
+        return false;
+    }
+
+    /**
+     * Handles a protocol version 2 frame: a type byte, a payload length byte and the payload; see
+     * {@link Protocol#VERSION}. Frames of unknown types are skipped.
+     *
+     * @param frames The frames to decode.
+     * @param offset The index of the first byte of the frame.
+     * @param length The length of the frame.
+     * @return Boolean indicating success.
+     */
+    boolean handleFrameVersion2(ByteBuffer frames, int offset, int length) {
+        int type = frames.get(offset);
+        int payloadLength = length - 2;
+        int payload = payloadLength >= 1 ? frames.get(offset + 2) & 0xFF : -1;
+        switch (type) {
+            case Protocol.MOVE -> {
+                if (payloadLength == 1 && payload >= 1 && payload <= 9) {
+                    Server.receiveMove(client, payload - 1);
+                    return true;
+                }
+            }
+            case Protocol.PLAY_AGAIN -> {
+                if (payloadLength == 1) {
+                    Server.receivePlayAgain(client, payload == 1);
+                    return true;
+                }
+            }
+            case Protocol.IDENTIFY -> {
+                if (payloadLength >= 1 && payloadLength <= PlayerStore.MAX_NAME_LENGTH) {
+                    return Server.receiveName(client, getName(frames, offset + 2, payloadLength));
+                }
+            }
+            case Protocol.DELTAS_REQUEST -> {
+                if (payloadLength == 1) {
+                    Server.receiveDeltas(client, payload == 1);
+                    return true;
+                }
+            }
+            case Protocol.RESYNC -> {
+                Server.receiveResync(client);
+                return true;
+            }
+            case Protocol.WATCH -> {
+                if (payloadLength == 1) {
+                    Server.receiveWatch(client, payload);
+                    return true;
+                }
+            }
+            case Protocol.QUIT -> {
+                return false;
+            }
+            default -> {
+                ServerLog.log(LogLevel.DEBUG, "Skipped message of unknown type from %s: %s", client, type & 0xFF);
+                return true;
+            }
+        }
+        ServerMetrics.rejected.increment();
+        ServerLog.log(LogLevel.WARNING, "Received invalid message from %s: type %s, %d bytes", client, type & 0xFF,
+                payloadLength);
+        return false;
+    }
+
+    /**
+     * @return The ASCII name of the passed {@code length} at the passed {@code offset} of the passed {@code frames}.
+     */
+    static String getName(ByteBuffer frames, int offset, int length) {
+        byte[] name = new byte[length];
+        frames.get(offset, name);
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+}
@@ -1,37 +1,161 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 class ServerGame {
-    GameState state = GameState.INITIALIZING;
+    // constant frames shared by all rooms; never modified
+    static final byte[] WAITING_FRAME = {'w'};
+    static final byte[] INVALID_FRAME = {'I'};
+    static final byte[] LOSS_FRAME = {'L'};
+    static final byte[] TIE_FRAME = {'T'};
 
-    char[] board = new char[9];
+    ServerLobby lobby;
+    int roomId;
+
+    /**
+     * Only changed on the room thread, but read without involving it by the metrics and by the shutdown thread
+     * deciding when the server has drained; see {@link ServerMetrics#getActiveGamesNow()} and {@link Server#drain()}.
+     */
+    volatile GameState state = GameState.INITIALIZING;
+
+    Bitboard board = new Bitboard();
 
     int turn = 0;
     ServerClient playerX = null;
     ServerClient playerO = null;
 
+    /**
+     * The client seated alone waiting for an opponent, or {@code null}; only set on the room thread, and read by the
+     * lobby to report the load of the server; see {@link ServerCluster#report()}.
+     */
+    volatile ServerClient loneWaiter = null;
+
+    // counts the waits for an opponent in this room, so a bot scheduled for an earlier wait is not seated in a later
+    // one; only used on the room thread, see waitForOpponent(ServerClient)
+    int waitCount = 0;
+
+    // the game from before a restart held in this room for its players, or null; see reserve(SnapshotGame)
+    SnapshotGame reserved = null;
+
     ServerClient lastWinner = null;
+    int lastWinnerId = 0;
     int streak = 0;
 
     Random random = new Random();
 
-    Thread waitThread = null;
+    // frames reused for every message of their kind sent by this room; only filled and sent on the room thread
+    byte[] startFrame = new byte[11];
+    byte[] turnFrame = new byte[10];
+    byte[] boardFrame = new byte[9];
+    byte[] winFrame = new byte[2];
+
+    /**
+     * The queued clients watching this room, and the room's latest state as sent to them: a read-only
+     * {@link Protocol#GAME} frame shared by all of them, replaced (never modified) by the room thread whenever the
+     * state changes while anyone is watching; see {@link #publishState(byte)} and {@link ServerSpectators}.
+     */
+    final CopyOnWriteArrayList<ServerClient> spectators = new CopyOnWriteArrayList<>();
+    volatile ByteBuffer spectatorFrame = null;
+    byte spectatorState = ' ';
+
+    /**
+     * Commands for this room (moves, replies from the winner, leaving clients and clients offered by the lobby),
+     * queued by any thread and run in order by the room thread; see {@link #execute(Runnable)} and {@link #run()}.
+     * <p>
+     * The room thread is the only thread that touches the game state, so it needs no lock, and reader threads never
+     * wait on a game (or on the socket writes it makes) to hand over a message; each room is a single-writer actor.
+     */
+    final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    volatile boolean running = true;
+    Thread thread = null;
 
     /**
-     * Sets the random number generator seed to the current time; see {@link Random#setSeed(long)} and
+     * Sets the random number generator seed to the current time and room ID; see {@link Random#setSeed(long)} and
      * {@link System#currentTimeMillis()}.
      * <p>
-     * Begins waiting for players; see {@link #waitForPlayers()}.
+     * Begins waiting for players (see {@link #waitForPlayers(ServerClient)}), then starts a new thread (see
+     * {@link Server#startThread(Runnable)}) that runs the room's commands; see {@link #run()}.
+     *
+     * @param lobby  The lobby that queues clients and offers them to this room.
+     * @param roomId The ID of this room.
+     */
+    ServerGame(ServerLobby lobby, int roomId) {
+        this.lobby = lobby;
+        this.roomId = roomId;
+
+        random.setSeed(System.currentTimeMillis() + roomId);
+        waitForPlayers(null);
+
+        thread = Server.startThread(this::run);
+    }
+
+    /**
+     * Queues a command to be run on the room thread and wakes it up; never blocks.
+     *
+     * @param command The command to run.
+     */
+    void execute(Runnable command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Runs queued commands (see {@link #execute(Runnable)}), parking the room thread whenever the queue is empty,
+     * until the room shuts down; see {@link #shutdown()}.
+     */
+    void run() {
+        while (running) {
+            runCommands();
+            if (commands.isEmpty()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Runs queued commands until the queue is empty. Must only be called by the room thread (or instead of it, once
+     * the room has shut down).
      */
-    ServerGame() {
-        random.setSeed(System.currentTimeMillis());
-        waitForPlayers();
+    void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+        }
     }
 
     /**
-     * Starts a new thread that looks for players, and starts the game once it finds some; see {@link #findPlayers()}
-     * and {@link #startGame()}.
+     * Stops running commands, and wakes up the room thread so that it can exit.
+     */
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return A string representation of the room, including the room ID.
+     */
+    @Override
+    public String toString() {
+        return "Room #" + roomId;
+    }
+
+    /**
+     * Clears the seats and lists the room with the lobby as free, so that it will be offered queued clients; see
+     * {@link ServerLobby#roomFree(ServerGame, int)} and {@link #seatPlayers(List)}.
+     * <p>
+     * The passed {@code waitingPlayer} (the winner that chose to play again) keeps a seat; if no other client is
+     * queued, sends them the "waiting for another player" message ('w').
+     *
+     * @param waitingPlayer The client to keep seated, or {@code null}.
      */
-    void waitForPlayers() {
+    void waitForPlayers(ServerClient waitingPlayer) {
         if (state == GameState.WAITING_FOR_PLAYERS) {
             return;
         }
@@ -40,64 +164,199 @@ class ServerGame {
         playerO = null;
 
         state = GameState.WAITING_FOR_PLAYERS;
-        System.out.print("Waiting for players...\n");
-        waitThread = new Thread(() -> {
-            while (Server.serverSocket != null) {
-                if (findPlayers()) {
-                    startGame();
-                    break;
-                }
-                Thread.yield();
+        ServerLog.log(LogLevel.DEBUG, "%s: Waiting for players...", this);
+
+        if (waitingPlayer != null && waitingPlayer.state == ClientState.CONNECTED) {
+            waitingPlayer.readyTime = System.nanoTime();
+            seat(waitingPlayer);
+        }
+        if (lobby.roomFree(this, getPlayerCount()) && getPlayerCount() == 1) {
+            waitForOpponent(playerX != null ? playerX : playerO);
+        }
+    }
+
+    /**
+     * Seats the client in a free seat. Uses {@link Random#nextBoolean()} to determine which seat the first player
+     * takes.
+     *
+     * @param client The client to seat.
+     */
+    void seat(ServerClient client) {
+        client.game = this;
+        if (playerX == null && playerO == null) {
+            if (random.nextBoolean()) {
+                playerX = client;
+            } else {
+                playerO = client;
             }
-        });
-        waitThread.start();
+        } else if (playerX == null) {
+            playerX = client;
+        } else {
+            playerO = client;
+        }
     }
 
     /**
-     * Grabs the first two clients from the {@link Server#clients} array (queue). The two clients will only be used
-     * if/once they are fully connected.
+     * Seats the clients taken from the queue by {@link ServerLobby#matchPlayers()}, and starts the game once both
+     * seats are taken; see {@link #startGame()}. Runs on the room thread.
      * <p>
-     * If there is only one client, sends the "waiting for another player" message to that client ('w'); this message
-     * is only sent to the client once.
+     * Clients that are no longer connected are skipped. Clients that don't fit (the room was filled or seated a game
+     * in the meantime) are put back at the front of the queue; see {@link ServerLobby#requeueFront(List)}.
      * <p>
-     * Uses {@link Random#nextBoolean()} to determine which player will be X.
+     * If a seat is still free afterwards, lists the room as free again; if only one player is seated and no other
+     * client is queued, sends them the "waiting for another player" message ('w').
      *
-     * @return Boolean indicating whether two players were found.
+     * @param newcomers The clients offered to this room.
      */
-    boolean findPlayers() {
-        int clientCount = Server.clients.size();
-        ServerClient player1 = clientCount >= 1 ? Server.clients.get(0) : null;
-        if (player1 == null || player1.state != ClientState.CONNECTED) {
-            return false;
-        }
-        ServerClient player2 = clientCount >= 2 ? Server.clients.get(1) : null;
-
-        if (playerX != player1 && playerO != player1) {
-            if (random.nextBoolean()) {
-                playerX = player1;
-            } else {
-                playerO = player1;
+    void seatPlayers(List<ServerClient> newcomers) {
+        ArrayList<ServerClient> returned = new ArrayList<>();
+        boolean seatedNewcomer = false;
+        for (ServerClient client : newcomers) {
+            if (state != GameState.WAITING_FOR_PLAYERS || getPlayerCount() == 2 || reserved != null) {
+                returned.add(client);
+                continue;
             }
 
-            if (player2 == null || player2.state != ClientState.CONNECTED) {
-                player1.sendMessage(new byte[]{'w'});
-                return false;
+            // publish the room before checking the state, so that a concurrent disconnect either sees the room
+            // or is seen here; see Server#disconnect(ServerClient)
+            client.game = this;
+            if (client.state != ClientState.CONNECTED) {
+                client.game = null;
+                continue;
             }
+            seat(client);
+            seatedNewcomer = true;
+        }
+        if (!returned.isEmpty()) {
+            lobby.requeueFront(returned);
+        }
+
+        if (state != GameState.WAITING_FOR_PLAYERS || reserved != null) {
+            return;
+        }
+        if (getPlayerCount() == 2) {
+            startGame();
+            return;
+        }
+        if (lobby.roomFree(this, getPlayerCount()) && seatedNewcomer && getPlayerCount() == 1) {
+            waitForOpponent(playerX != null ? playerX : playerO);
+        }
+    }
+
+    /**
+     * Sends the "waiting for another player" message ('w') to the passed {@code player}, who is seated alone.
+     * <p>
+     * If bots are enabled (see {@link Server#botDelay}), schedules a bot to take the empty seat should the player
+     * still be waiting alone, in this same wait, once the delay has passed; see {@link #seatBot(ServerClient, int)}.
+     *
+     * @param player The client waiting for an opponent.
+     */
+    void waitForOpponent(ServerClient player) {
+        player.sendMessage(WAITING_FRAME);
+        loneWaiter = player;
+        int wait = ++waitCount;
+
+        if (Server.botDelay >= 0 && !(player instanceof ServerBot)) {
+            CompletableFuture.delayedExecutor(Server.botDelay, TimeUnit.SECONDS)
+                    .execute(() -> execute(() -> seatBot(player, wait)));
         }
+    }
 
-        if (player2 == null || player2.state != ClientState.CONNECTED) {
+    /**
+     * Seats a new bot (see {@link ServerBot}) opposite the passed {@code player}, if they are still seated alone in
+     * this room waiting for another player, in the wait the bot was scheduled for: a player whose opponent left
+     * waits the full delay again, however long they waited before. Runs on the room thread.
+     *
+     * @param player The client that was waiting for an opponent.
+     * @param wait   The wait the bot was scheduled for; see {@link #waitCount}.
+     */
+    void seatBot(ServerClient player, int wait) {
+        if (wait != waitCount) {
+            return;
+        }
+        if (state != GameState.WAITING_FOR_PLAYERS || getPlayerCount() != 1 || reserved != null || lobby.draining) {
+            return;
+        }
+        if ((playerX != player && playerO != player) || player.state != ClientState.CONNECTED) {
+            return;
+        }
+
+        ServerBot bot = new ServerBot(lobby.nextClientId());
+        ServerLog.log(LogLevel.INFO, "%s: %s (bot) takes the empty seat.", this, bot);
+        bot.join(this);
+    }
+
+    /**
+     * Moves the client waiting alone in this room for an opponent (see {@link #loneWaiter}) to the server at the
+     * passed {@code host} and {@code port} of the cluster, if they are still waiting alone and can be moved (see
+     * {@link ServerClient#canRedirect()}): they leave the room, which is free again, and are told to reconnect to that
+     * server; see {@link ServerClient#redirect(String, int)}. Runs on the room thread, for
+     * {@link ServerCluster#transfer(String, int)}.
+     *
+     * @param host The host of the server to move the client to.
+     * @param port The port of the server to move the client to.
+     */
+    void redirectAlone(String host, int port) {
+        ServerClient player = loneWaiter;
+        if (player == null || state != GameState.WAITING_FOR_PLAYERS || getPlayerCount() != 1 || player.game != this) {
+            return;
+        }
+        if (!player.canRedirect()) {
+            return; // still speaking version 1, or already gone
+        }
+        leave(player);
+        player.redirect(host, port);
+    }
+
+    /**
+     * Removes a client from the room if they are seated in it, and updates the game state accordingly.
+     * <p>
+     * Run on the room thread for {@link Server#disconnect(ServerClient)}.
+     *
+     * @param client The client that disconnected.
+     * @return Boolean indicating whether the client was seated in this room.
+     */
+    boolean leave(ServerClient client) {
+        if (client.game != this) {
             return false;
         }
-        if (playerX == null) {
-            playerX = player2;
-        } else {
-            playerO = player2;
+        client.game = null;
+
+        switch (state) {
+            case PLAYING -> {
+                if (playerX == client) {
+                    playerX = null;
+                    endGame(playerO);
+                } else if (playerO == client) {
+                    playerO = null;
+                    endGame(playerX);
+                }
+            }
+            case WAITING_ON_WINNER -> {
+                if (lastWinner == client) {
+                    restartGame(client, false);
+                    lastWinner = null;
+                }
+            }
+            case WAITING_FOR_PLAYERS -> {
+                if (playerX == client) {
+                    playerX = null;
+                } else if (playerO == client) {
+                    playerO = null;
+                }
+                loneWaiter = null;
+                if (reserved != null) {
+                    releaseReservation(reserved);
+                } else {
+                    lobby.roomFree(this, getPlayerCount());
+                }
+            }
         }
         return true;
     }
 
     /**
-     * @return The number of clients currently playing the game.
+     * @return The number of clients currently seated in the room.
      */
     int getPlayerCount() {
         int players = 2;
@@ -111,31 +370,14 @@ class ServerGame {
     }
 
     /**
-     * Sends the position in the queue to every fully connected client, skipping (from the beginning of the array)
-     * the number of clients defined by {@code skipClients}.
-     *
-     * @param skipClients Number of clients (from the beginning of the array) to skip sending the message to.
-     */
-    void sendQueueUpdates(int skipClients) {
-        int players = getPlayerCount();
-        for (int index = Server.clients.size() - 1; index >= skipClients; index--) {
-            ServerClient client = Server.clients.get(index);
-            if (client.state == ClientState.CONNECTED) {
-                client.sendMessage(new byte[]{'Q', (byte) (index - players)});
-            }
-        }
-    }
-
-    /**
-     * Populates the passed {@code byteArray} array with the board character bytes from {@link #board}.
+     * Populates the passed {@code byteArray} array with the board character bytes from {@link #board}; see
+     * {@link Bitboard#populateBytes(byte[], int)}.
      *
      * @param byteArray Byte array to populate.
      * @param offset    Integer to add to the byte array indices.
      */
     void populateBoardBytes(byte[] byteArray, int offset) {
-        for (int square = 0; square < 9; square++) {
-            byteArray[offset + square] = (byte) board[square];
-        }
+        board.populateBytes(byteArray, offset);
     }
 
     /**
@@ -148,91 +390,59 @@ class ServerGame {
     /**
      * Starts the game.
      * <p>
-     * Sends queue updates to all clients except for the current players; see {@link #sendQueueUpdates(int)}.
+     * Removes any listing of the room as free; see {@link ServerLobby#roomBusy(ServerGame)}.
      * <p>
      * Sends "game starting", board state and "indicate who plays next" messages to the current players.
+     * <p>
+     * Logs how long matchmaking took, from the moment the later of the two players became available to be seated
+     * (see {@link ServerClient#readyTime}) until now.
      */
     void startGame() {
-        sendQueueUpdates(2);
+        lobby.roomBusy(this);
+        loneWaiter = null;
 
-        for (int square = 0; square < 9; square++) {
-            board[square] = ' ';
-        }
+        board.clear();
         turn = 0;
 
         state = GameState.PLAYING;
-        System.out.printf("Game started with %s and %s!\n", playerX, playerO);
+        ServerMetrics.games.increment();
+        ServerJournal.gameStarted(this);
+        double matchMillis = (System.nanoTime() - Math.max(playerX.readyTime, playerO.readyTime)) / 1e6;
+        ServerLog.log(LogLevel.INFO, "%s: Game started with %s and %s! (matched in %.3f ms)", this, playerX, playerO,
+                matchMillis);
 
         ServerClient turnPlayer = getTurnPlayer();
         ServerClient otherPlayer = turnPlayer == playerX ? playerO : playerX;
 
-        byte[] turnPlayerBytes = new byte[11];
-        turnPlayerBytes[0] = 'x';
-        populateBoardBytes(turnPlayerBytes, 1);
-        turnPlayerBytes[10] = 1;
-        turnPlayer.sendMessage(turnPlayerBytes);
-
-        byte[] otherPlayerBytes = new byte[11];
-        otherPlayerBytes[0] = 'o';
-        populateBoardBytes(otherPlayerBytes, 1);
-        otherPlayerBytes[10] = 0;
-        otherPlayer.sendMessage(otherPlayerBytes);
+        populateBoardBytes(startFrame, 1);
+        startFrame[0] = 'x';
+        startFrame[10] = 1;
+        turnPlayer.sendMessage(startFrame);
+
+        startFrame[0] = 'o';
+        startFrame[10] = 0;
+        otherPlayer.sendMessage(startFrame);
+
+        publishState((byte) 'x');
     }
 
     /**
-     * Checks the rows, columns and diagonals of the passed {@code square} for a win for the passed {@code role}.
+     * Checks the board for a win for the passed {@code role}; see {@link Bitboard#isWin(char)}.
      *
-     * @param role   The role to check for the win.
-     * @param square The square to check the rows, columns and diagonals of.
+     * @param role The role to check for the win.
      * @return Boolean indicating whether the passed {@code role} won.
      */
-    boolean checkWin(char role, int square) {
-        // check row
-        int rowStart = (square / 3) * 3;
-        if (board[rowStart] == role && board[rowStart + 1] == role && board[rowStart + 2] == role) {
-            return true;
-        }
-
-        // check column
-        int columnStart = square % 3;
-        if (board[columnStart] == role && board[columnStart + 3] == role && board[columnStart + 6] == role) {
-            return true;
-        }
-
-        if (square % 2 == 1) { // no need to check diagonals
-            return false;
-        }
-
-        // check main diagonal
-        if (square == 0 || square == 4 || square == 8) {
-            if (board[0] == role && board[4] == role && board[8] == role) {
-                return true;
-            }
-        }
-
-        // check anti diagonal
-        if (square == 2 || square == 4 || square == 6) {
-            if (board[2] == role && board[4] == role && board[6] == role) {
-                return true;
-            }
-        }
-
-        return false;
+    boolean checkWin(char role) {
+        return board.isWin(role);
     }
 
     /**
-     * Checks if all board squares are filled, indicating a tie.
+     * Checks if all board squares are filled, indicating a tie; see {@link Bitboard#isFull()}.
      *
      * @return Boolean indicating whether the board is completely full, indicating a tie.
      */
     boolean checkTie() {
-        int filled = 0;
-        for (int square = 0; square < 9; square++) {
-            if (board[square] != ' ') {
-                filled++;
-            }
-        }
-        return filled == 9;
+        return board.isFull();
     }
 
     /**
@@ -240,72 +450,128 @@ class ServerGame {
      * <p>
      * If the move is invalid, sends the "incorrect move" message to the client.
      * <p>
-     * Otherwise, makes the move and checks for a win and a tie; see {@link #checkWin(char, int)} and
+     * Otherwise, makes the move and checks for a win and a tie; see {@link #checkWin(char)} and
      * {@link #checkTie()}.
      * <p>
-     * If the player won, calls {@link #endGame(ServerClient)}.
+     * If the player won or tied, queues the final board state for both players and calls
+     * {@link #endGame(ServerClient)}, which sends it along with the result messages in a single write per player.
      * <p>
      * Otherwise, sends board state and "indicate who plays next" messages to the current players.
+     * <p>
+     * Run on the room thread for {@link Server#receiveMove(ServerClient, int)}. Records how long processing the
+     * turn took; see {@link ServerMetrics#playTurnTime}.
      *
      * @param player The client claiming to be a player and attempting to play a turn.
      * @param square The square the player wants to play their turn on.
      */
     void playTurn(ServerClient player, int square) {
-        if (state != GameState.PLAYING) {
-            return;
-        }
+        long startTime = System.nanoTime();
+        try {
+            if (state != GameState.PLAYING) {
+                return;
+            }
 
-        ServerClient turnPlayer = getTurnPlayer();
-        if (turnPlayer == null || turnPlayer.state != ClientState.CONNECTED || turnPlayer != player) {
-            return;
-        }
-        ServerClient otherPlayer = turnPlayer == playerX ? playerO : playerX;
-        if (otherPlayer == null || otherPlayer.state != ClientState.CONNECTED) {
-            return;
+            ServerClient turnPlayer = getTurnPlayer();
+            if (turnPlayer == null || turnPlayer.state != ClientState.CONNECTED || turnPlayer != player) {
+                return;
+            }
+            ServerClient otherPlayer = turnPlayer == playerX ? playerO : playerX;
+            if (otherPlayer == null || otherPlayer.state != ClientState.CONNECTED) {
+                return;
+            }
+
+            if (!board.isEmpty(square)) {
+                turnPlayer.sendMessage(INVALID_FRAME);
+                return;
+            }
+            char role = turnPlayer == playerX ? 'X' : 'O';
+            board.play(role, square);
+            turn++;
+            ServerJournal.moved(this, role, square);
+
+            ServerLog.log(LogLevel.DEBUG, "%s: %s played square %d.", this, player, square + 1);
+
+            boolean win = checkWin(role);
+            if (win || checkTie()) {
+                // flushed together with the result messages; see endGame(ServerClient)
+                populateBoardBytes(boardFrame, 0);
+                turnPlayer.queueMessage(boardFrame);
+                otherPlayer.queueMessage(boardFrame);
+
+                endGame(win ? turnPlayer : null);
+                return;
+            }
+
+            populateBoardBytes(turnFrame, 0);
+            turnFrame[9] = 0;
+            turnPlayer.sendMessage(turnFrame);
+
+            turnFrame[9] = 1;
+            otherPlayer.sendMessage(turnFrame);
+
+            publishState((byte) (role == 'X' ? 'o' : 'x'));
+        } finally {
+            ServerMetrics.playTurnTime.record(System.nanoTime() - startTime);
         }
+    }
 
-        if (board[square] != ' ') {
-            turnPlayer.sendMessage(new byte[]{'I'});
+    /**
+     * Records the passed {@code state} of the room, and if anyone is watching, encodes it along with the board into a
+     * new {@link #spectatorFrame} and wakes up the broadcast thread to send it to them; see {@link ServerSpectators}.
+     * Runs on the room thread.
+     *
+     * @param state `x` or `o` if it is that role's turn, `X` or `O` if that role won, `T` if the game was tied, or
+     *              ` ` if no game was played yet; see {@link Protocol#GAME}.
+     */
+    void publishState(byte state) {
+        spectatorState = state;
+        if (spectators.isEmpty()) {
             return;
         }
-        char role = turnPlayer == playerX ? 'X' : 'O';
-        board[square] = role;
-        turn++;
-
-        System.out.printf("%s played square %d.\n", player, square + 1);
 
-        boolean win = checkWin(role, square);
-        if (win || checkTie()) {
-            byte[] boardBytes = new byte[9];
-            populateBoardBytes(boardBytes, 0);
-            turnPlayer.sendMessage(boardBytes);
-            otherPlayer.sendMessage(boardBytes);
+        byte[] frame = new byte[13];
+        frame[0] = Protocol.GAME;
+        frame[1] = 11;
+        frame[2] = (byte) roomId;
+        populateBoardBytes(frame, 3);
+        frame[12] = state;
+        spectatorFrame = ByteBuffer.wrap(frame).asReadOnlyBuffer();
+        ServerSpectators.wake();
+    }
 
-            endGame(win ? turnPlayer : null);
+    /**
+     * Sends the board and "indicate who plays next" messages to the passed {@code player} again, with the board in
+     * full; see {@link ServerClient#resyncBoard()}.
+     * <p>
+     * Run on the room thread for {@link Server#receiveResync(ServerClient)}. Does nothing unless the passed
+     * {@code player} is playing in the room.
+     *
+     * @param player The client claiming to be a player and asking for the board.
+     */
+    void resync(ServerClient player) {
+        if (state != GameState.PLAYING || player != playerX && player != playerO) {
             return;
         }
 
-        byte[] turnPlayerBytes = new byte[10];
-        populateBoardBytes(turnPlayerBytes, 0);
-        turnPlayerBytes[9] = 0;
-        turnPlayer.sendMessage(turnPlayerBytes);
-
-        byte[] otherPlayerBytes = new byte[10];
-        populateBoardBytes(otherPlayerBytes, 0);
-        otherPlayerBytes[9] = 1;
-        otherPlayer.sendMessage(otherPlayerBytes);
+        player.resyncBoard();
+        populateBoardBytes(turnFrame, 0);
+        turnFrame[9] = (byte) (player == getTurnPlayer() ? 1 : 0);
+        player.sendMessage(turnFrame);
     }
 
     /**
      * Ends the game.
      * <p>
-     * If a {@code winner} was passed, increments their win streak, and sends them and the loser the win and loss
-     * messages. The loser will be sent to the end of the {@link Server#clients} array (queue), and the server will
-     * then wait for the passed {@code winner} to respond whether they want to play again.
+     * If a {@code winner} was passed, increments their win streak (which an identified player carries on across
+     * reconnects and restarts; see {@link ServerClient#playerId} and {@link #restore(RecoveredRoom)}), and sends
+     * them and the loser the win and loss messages. The loser leaves the room and is sent to the end of the queue
+     * (see {@link ServerLobby#requeue(ServerClient)}), and the room will then wait for the passed {@code winner} to
+     * respond whether they want to play again.
+     * <p>
+     * If no {@code winner} was passed ({@code null}), sends the tie messages to both current players, sends them both
+     * to the end of the queue and begins waiting for players again; see {@link #waitForPlayers(ServerClient)}.
      * <p>
-     * If no {@code winner} was passed ({@code null}), sends the tie messages to both current players, moves them
-     * both to the end of the {@link Server#clients} array (queue) and begins waiting for players again; see
-     * {@link #waitForPlayers()}.
+     * Records the result in the statistics of the players who identified themselves; see {@link PlayerStore}.
      *
      * @param winner The player who won, or {@code null} if it was a tie.
      */
@@ -314,61 +580,69 @@ class ServerGame {
             return;
         }
 
-        if (winner != lastWinner) {
+        int winnerId = winner == null ? 0 : winner.playerId;
+        if (winner != lastWinner && (winnerId == 0 || winnerId != lastWinnerId)) {
             streak = 0;
         }
         lastWinner = winner;
+        lastWinnerId = winnerId;
 
         if (winner != null && winner.state == ClientState.CONNECTED) {
-            System.out.printf("Game over, %s wins!\n", winner);
+            ServerLog.log(LogLevel.INFO, "%s: Game over, %s wins!", this, winner);
+            ServerMetrics.wins.increment();
             if (++streak > 1) {
-                System.out.printf("%s has won %d games in a row!\n", winner, streak);
-            }
-
-            if (winner == playerX) {
-                if (Server.clients.remove(playerO)) {
-                    Server.clients.add(playerO);
-                }
-            } else {
-                if (Server.clients.remove(playerX)) {
-                    Server.clients.add(playerX);
-                }
+                ServerLog.log(LogLevel.INFO, "%s: %s has won %d games in a row!", this, winner, streak);
             }
+            ServerJournal.gameEnded(this, winner);
+            PlayerStore.recordWin(winner, streak);
+            publishState((byte) (winner == playerX ? 'X' : 'O'));
 
             state = GameState.WAITING_ON_WINNER;
-            System.out.printf("Waiting on %s to respond...\n", winner);
+            ServerLog.log(LogLevel.DEBUG, "%s: Waiting on %s to respond...", this, winner);
 
-            winner.sendMessage(new byte[]{'W', (byte) streak});
+            winFrame[0] = 'W';
+            winFrame[1] = (byte) Math.min(streak, 255); // streaks longer than 255 are reported as 255
+            winner.sendMessage(winFrame);
             ServerClient loser = winner == playerX ? playerO : playerX;
             if (loser != null && loser.state == ClientState.CONNECTED) {
-                loser.sendMessage(new byte[]{'L'});
+                loser.sendMessage(LOSS_FRAME);
+                PlayerStore.recordLoss(loser, false);
+                loser.game = null;
+                lobby.requeue(loser);
             }
         } else {
-            System.out.print("Game over, it's a tie!\n");
+            ServerLog.log(LogLevel.INFO, "%s: Game over, it's a tie!", this);
+            ServerMetrics.ties.increment();
+            ServerJournal.gameEnded(this, null);
+            publishState((byte) 'T');
 
             if (playerX != null && playerX.state == ClientState.CONNECTED) {
-                if (Server.clients.remove(playerX)) {
-                    Server.clients.add(playerX);
-                }
-                playerX.sendMessage(new byte[]{'T'});
+                playerX.sendMessage(TIE_FRAME);
+                PlayerStore.recordLoss(playerX, true);
+                playerX.game = null;
+                lobby.requeue(playerX);
             }
             if (playerO != null && playerO.state == ClientState.CONNECTED) {
-                if (Server.clients.remove(playerO)) {
-                    Server.clients.add(playerO);
-                }
-                playerO.sendMessage(new byte[]{'T'});
+                playerO.sendMessage(TIE_FRAME);
+                PlayerStore.recordLoss(playerO, true);
+                playerO.game = null;
+                lobby.requeue(playerO);
             }
 
-            waitForPlayers();
+            waitForPlayers(null);
         }
     }
 
     /**
      * Restarts the game.
      * <p>
-     * If the winner ({@code player}) chooses not to play again, disconnects them from the server.
+     * If the winner ({@code player}) chooses not to play again, unseats them and closes their connection; see
+     * {@link ServerClient#abort()}.
+     * <p>
+     * Begins waiting for players again, keeping the winner seated if they play again; see
+     * {@link #waitForPlayers(ServerClient)}.
      * <p>
-     * Begins waiting for players again; see {@link #waitForPlayers()}.
+     * Run on the room thread for {@link Server#receivePlayAgain(ServerClient, boolean)}.
      *
      * @param player           The client claiming to be the winner and attempting to restart the game.
      * @param winnerPlaysAgain Whether the winner ({@code player}) wants to play again.
@@ -381,16 +655,170 @@ class ServerGame {
         if (player != lastWinner) {
             return;
         }
+        ServerJournal.decided(this, winnerPlaysAgain);
 
-        if (!winnerPlaysAgain) {
-            if (player.state == ClientState.CONNECTED) {
-                System.out.printf("%s will not play again.\n", player);
-                player.disconnect();
-            }
+        if (winnerPlaysAgain) {
+            ServerLog.log(LogLevel.INFO, "%s: %s will play again!", this, player);
+            waitForPlayers(player);
+            return;
+        }
+
+        ServerLog.log(LogLevel.INFO, "%s: %s will not play again.", this, player);
+        // unseat the winner before closing their connection, which is left to the thread that owns it: their reader
+        // thread or event loop, which may be disconnecting them at the same time; see ServerClient#abort()
+        player.game = null;
+        waitForPlayers(null);
+        player.abort();
+    }
+
+    /**
+     * Journals the player ID of the passed {@code client}, who identified themselves while seated in this room, if
+     * their game already started (and was journalled without it); see
+     * {@link ServerJournal#playerIdentified(ServerGame, ServerClient)}.
+     * <p>
+     * Run on the room thread for {@link Server#receiveName(ServerClient, String)}.
+     *
+     * @param client The client who identified themselves.
+     */
+    void identified(ServerClient client) {
+        if (state == GameState.PLAYING && (client == playerX || client == playerO)) {
+            ServerJournal.playerIdentified(this, client);
+        }
+    }
+
+    /**
+     * Holds the passed {@code game}, which was in progress in this room when the server last stopped, for its players
+     * to reconnect (see {@link #seatRestored(ServerClient, SnapshotGame)}): the room is not offered any other clients
+     * until the game resumes or is given up on; see {@link #releaseReservation(SnapshotGame)}.
+     * <p>
+     * Run on the room thread for {@link ServerSnapshot#restore(ServerLobby)}, before any client connects, for games
+     * from the snapshot and the journal alike; see {@link ServerSnapshot#hold(SnapshotGame)}.
+     *
+     * @param game The unfinished game.
+     */
+    void reserve(SnapshotGame game) {
+        if (state != GameState.WAITING_FOR_PLAYERS || getPlayerCount() != 0) {
+            return;
+        }
+        lobby.roomBusy(this);
+        reserved = game;
+        ServerLog.log(LogLevel.INFO, "%s: Holding the game of %s and %s for them to reconnect...", this,
+                game.playerXName, game.playerOName);
+    }
+
+    /**
+     * Seats a player of the game held in this room (see {@link #reserve(SnapshotGame)}) who reconnected, in the seat
+     * they had; once both are seated, the game resumes where it was left off. Until then, sends them the "waiting for
+     * another player" message ('w').
+     * <p>
+     * If the game is no longer held, the client is put back at the front of the queue instead; see
+     * {@link ServerLobby#requeueFront(List)}.
+     * <p>
+     * Run on the room thread for {@link ServerSnapshot#identified(ServerClient, String)}.
+     *
+     * @param client The client who reconnected.
+     * @param game   The game the client was playing.
+     */
+    void seatRestored(ServerClient client, SnapshotGame game) {
+        if (reserved != game) {
+            lobby.requeueFront(List.of(client));
+            return;
+        }
+
+        // publish the room before checking the state, see seatPlayers(List)
+        client.game = this;
+        if (client.state != ClientState.CONNECTED) {
+            client.game = null;
+            return;
+        }
+        if (client.playerName.equals(game.playerXName) && playerX == null) {
+            playerX = client;
+        } else {
+            playerO = client;
+        }
+        client.readyTime = System.nanoTime();
+        if (getPlayerCount() == 2) {
+            resumeGame(game);
         } else {
-            System.out.printf("%s will play again!\n", player);
+            client.sendMessage(WAITING_FRAME);
         }
+    }
+
+    /**
+     * Resumes the game held in this room (see {@link #reserve(SnapshotGame)}) once both of its players are seated
+     * again: restores the board and turn, and sends both players "game starting" messages carrying them.
+     *
+     * @param game The game to resume.
+     */
+    void resumeGame(SnapshotGame game) {
+        reserved = null;
+        board.unpack(game.board);
+        turn = game.turn;
+
+        state = GameState.PLAYING;
+        ServerJournal.gameResumed(this);
+        ServerLog.log(LogLevel.INFO, "%s: Game resumed with %s and %s after %d moves!", this, playerX, playerO, turn);
 
-        waitForPlayers();
+        ServerClient turnPlayer = getTurnPlayer();
+        populateBoardBytes(startFrame, 1);
+        startFrame[0] = 'x';
+        startFrame[10] = (byte) (turnPlayer == playerX ? 1 : 0);
+        playerX.sendMessage(startFrame);
+
+        startFrame[0] = 'o';
+        startFrame[10] = (byte) (turnPlayer == playerO ? 1 : 0);
+        playerO.sendMessage(startFrame);
+
+        publishState((byte) (turnPlayer == playerX ? 'x' : 'o'));
+    }
+
+    /**
+     * Gives up on the passed {@code game} held in this room (see {@link #reserve(SnapshotGame)}), once
+     * {@link ServerSnapshot#RESTORE_WINDOW} has passed or one of its players left again: any player seated in the
+     * meantime is put back at the front of the queue (see {@link ServerLobby#requeueFront(List)}), and the room is
+     * listed as free, and the game is journalled as abandoned; see {@link ServerJournal#gameAbandoned(ServerGame)}.
+     * Does nothing if the game is no longer held.
+     * <p>
+     * Runs on the room thread.
+     *
+     * @param game The game to give up on.
+     */
+    void releaseReservation(SnapshotGame game) {
+        if (reserved != game) {
+            return;
+        }
+        reserved = null;
+        ServerJournal.gameAbandoned(this);
+        ServerLog.log(LogLevel.INFO, "%s: No longer holding the game of %s and %s.", this, game.playerXName,
+                game.playerOName);
+
+        ArrayList<ServerClient> returned = new ArrayList<>();
+        for (ServerClient client : new ServerClient[]{playerX, playerO}) {
+            if (client != null) {
+                client.game = null;
+                returned.add(client);
+            }
+        }
+        playerX = null;
+        playerO = null;
+        if (!returned.isEmpty()) {
+            lobby.requeueFront(returned);
+        }
+        lobby.roomFree(this, 0);
+    }
+
+    /**
+     * Restores the win streak recovered from the journal for this room; the player it belongs to carries it on if
+     * they win in this room again (see {@link #endGame(ServerClient)}).
+     * <p>
+     * Run on the room thread for {@link ServerJournal#restore(ServerLobby)} and
+     * {@link ServerSnapshot#restore(ServerLobby)}, before any client connects.
+     *
+     * @param recoveredRoom The state of this room recovered from the journal (see {@link ServerJournal#replay()}) or
+     *                      the snapshot; see {@link ServerSnapshot#load(String)}.
+     */
+    void restore(RecoveredRoom recoveredRoom) {
+        lastWinnerId = recoveredRoom.winnerId;
+        streak = recoveredRoom.streak;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,513 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+class ServerJournal {
+    static final int RECORD_SIZE = 16;
+    static final int SEGMENT_SIZE = 1 << 24;
+    static final long COMMIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // record types; every record is RECORD_SIZE bytes: type, argument, room ID (2 bytes), two ints and a checksum
+    static final byte START = 1; // a = player X's player ID, b = player O's player ID (0 = not identified)
+    static final byte MOVE = 2; // argument = square (0-8), plus 16 for O
+    static final byte END = 3; // argument = 0 (tie), 1 (X won) or 2 (O won), a = winner's player ID, b = streak
+    static final byte DECISION = 4; // argument = 1 if the winner plays again, otherwise 0
+    static final byte ABANDON = 5; // a game interrupted by a restart was given up on
+    static final byte STREAK = 6; // a = winner's player ID, b = streak; written when compacting
+    static final byte CLIENT_ID = 7; // a = last client ID; written when compacting
+    static final byte PLAYER = 8; // argument = 0 (X) or 1 (O), a = player ID of a player identified after START
+
+    static Path path = null;
+    static FileChannel channel = null;
+
+    /**
+     * The mapped segments of the journal file, {@link #SEGMENT_SIZE} bytes each, mapped as appends reach them; see
+     * {@link #segment(long)}.
+     */
+    static volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    static final ReentrantLock mapLock = new ReentrantLock();
+
+    /**
+     * The position of the next record; appends claim their position with {@link AtomicLong#getAndAdd(long)}, so
+     * rooms append concurrently without a lock.
+     */
+    static final AtomicLong position = new AtomicLong();
+    static long committed = 0; // only used by the commit thread
+
+    static volatile boolean running = false;
+    static Thread commitThread = null;
+
+    static final HashMap<Integer, RecoveredRoom> recovered = new HashMap<>();
+
+    /**
+     * Replays the journal file (if it exists) to recover the state of every room (see {@link #replay()}), rewrites
+     * it with only what is still needed (see {@link #compact()}), then opens it for appending and starts a thread
+     * that commits appended records to disk in groups; see {@link #commit()}.
+     *
+     * @param file The journal file.
+     * @throws IOException From reading, writing or mapping the journal file.
+     */
+    static void open(String file) throws IOException {
+        path = Path.of(file);
+        if (Files.exists(path)) {
+            replay();
+        }
+        long length = compact();
+
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        position.set(length);
+        committed = length;
+
+        running = true;
+        commitThread = new Thread(ServerJournal::commit, "ServerJournal");
+        commitThread.setDaemon(true);
+        commitThread.start();
+    }
+
+    /**
+     * Reads every valid record of the journal file in order and applies it to the state of its room (see
+     * {@link RecoveredRoom}), stopping at the first empty or corrupt record (the end of the journal, or a record that
+     * was being written when the process died).
+     * <p>
+     * Also restores the client ID counter (see {@link ServerClient#lastClientId}), so client IDs logged before the
+     * restart are not reused.
+     *
+     * @throws IOException From reading the journal file.
+     */
+    static void replay() throws IOException {
+        int records = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    byte type = buffer.get(buffer.position());
+                    if (type == 0 || !isValid(buffer, buffer.position())) {
+                        buffer.clear();
+                        logReplay(records);
+                        return;
+                    }
+                    apply(buffer);
+                    records++;
+                }
+                buffer.compact();
+            }
+        }
+        logReplay(records);
+    }
+
+    /**
+     * Logs how much was recovered by {@link #replay()}.
+     *
+     * @param records The number of records replayed.
+     */
+    static void logReplay(int records) {
+        ServerLog.log(LogLevel.INFO, "Replayed %d journal records from %s", records, path);
+        for (RecoveredRoom room : recovered.values()) {
+            SnapshotGame game = interruptedGame(room);
+            if (game != null) {
+                ServerLog.log(LogLevel.INFO, "Room #%d: Game between %s and %s was interrupted at turn %d and is "
+                        + "held for them to reconnect.", room.roomId, game.playerXName, game.playerOName, room.turn);
+            } else if (room.playing) {
+                ServerLog.log(LogLevel.WARNING, "Room #%d: Game was interrupted at turn %d and is abandoned, as its "
+                        + "players cannot be recognized.", room.roomId, room.turn);
+            }
+            if (room.winnerId != 0 && room.streak > 0) {
+                ServerLog.log(LogLevel.INFO, "Room #%d: Recovered a streak of %d for %s.", room.roomId, room.streak,
+                        PlayerStore.getName(room.winnerId));
+            }
+        }
+    }
+
+    /**
+     * Applies the record at the position of the passed {@code buffer} to the state of its room, and moves past it.
+     *
+     * @param buffer The buffer to read the record from.
+     */
+    static void apply(ByteBuffer buffer) {
+        byte type = buffer.get();
+        byte argument = buffer.get();
+        int roomId = buffer.getShort() & 0xFFFF;
+        int a = buffer.getInt();
+        int b = buffer.getInt();
+        buffer.getInt(); // checksum
+
+        if (type == CLIENT_ID) {
+            ServerClient.lastClientId = Math.max(ServerClient.lastClientId, a);
+            return;
+        }
+        RecoveredRoom room = recovered.computeIfAbsent(roomId, RecoveredRoom::new);
+        switch (type) {
+            case START -> {
+                room.playing = true;
+                room.playerXId = a;
+                room.playerOId = b;
+                room.board.clear();
+                room.turn = 0;
+            }
+            case MOVE -> {
+                room.board.play((argument & 16) == 0 ? 'X' : 'O', argument & 15);
+                room.turn++;
+            }
+            case END -> {
+                room.playing = false;
+                room.winnerId = argument == 0 ? 0 : a;
+                room.streak = argument == 0 ? 0 : b;
+            }
+            case DECISION -> {
+                if (argument == 0) {
+                    room.winnerId = 0;
+                    room.streak = 0;
+                }
+            }
+            case PLAYER -> {
+                if (argument == 0) {
+                    room.playerXId = a;
+                } else {
+                    room.playerOId = a;
+                }
+            }
+            case ABANDON -> room.playing = false;
+            case STREAK -> {
+                room.winnerId = a;
+                room.streak = b;
+            }
+        }
+    }
+
+    /**
+     * Writes a new journal file holding only the recovered state that is still needed (the client ID counter, every
+     * room's streak held by an identified player (see {@link ServerClient#playerId}) and the start and moves of every
+     * interrupted game that is held for its players; see {@link #interruptedGame(RecoveredRoom)}), and atomically
+     * replaces the old one with it, so a held game survives another crash before its players reconnect.
+     *
+     * @return The length of the new journal file.
+     * @throws IOException From writing or replacing the journal file.
+     */
+    static long compact() throws IOException {
+        ArrayList<byte[]> records = new ArrayList<>();
+        records.add(encode(CLIENT_ID, 0, 0, ServerClient.lastClientId, 0));
+        for (RecoveredRoom room : recovered.values()) {
+            if (interruptedGame(room) != null) {
+                records.add(encode(START, 0, room.roomId, room.playerXId, room.playerOId));
+                for (int square = 0; square < 9; square++) {
+                    if (!room.board.isEmpty(square)) {
+                        int argument = (room.board.x & 1 << square) != 0 ? square : square | 16;
+                        records.add(encode(MOVE, argument, room.roomId, 0, 0));
+                    }
+                }
+            }
+            if (room.winnerId != 0 && room.streak > 0) {
+                records.add(encode(STREAK, 0, room.roomId, room.winnerId, room.streak));
+            }
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(records.size() * RECORD_SIZE);
+            for (byte[] record : records) {
+                buffer.put(record);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return (long) records.size() * RECORD_SIZE;
+    }
+
+    /**
+     * Restores the recovered streaks into the rooms (see {@link ServerGame#restore(RecoveredRoom)}), and hands the
+     * interrupted games to {@link ServerSnapshot#hold(SnapshotGame)}, which holds each in its room for its players to
+     * reconnect, as for a game left unfinished by a clean stop. Streaks and games are kept under the players' IDs (see
+     * {@link ServerClient#playerId}), the only identity that outlives a restart, so only those of identified players
+     * are recovered.
+     * <p>
+     * Must be called before {@link ServerSnapshot#restore(ServerLobby)}.
+     *
+     * @param lobby The lobby holding the rooms.
+     */
+    static void restore(ServerLobby lobby) {
+        for (ServerGame room : lobby.rooms) {
+            RecoveredRoom recoveredRoom = recovered.get(room.roomId);
+            if (recoveredRoom != null && recoveredRoom.winnerId != 0 && recoveredRoom.streak > 0) {
+                room.execute(() -> room.restore(recoveredRoom));
+            }
+        }
+        for (RecoveredRoom room : recovered.values()) {
+            SnapshotGame game = interruptedGame(room);
+            if (game != null) {
+                ServerSnapshot.hold(game);
+            }
+        }
+    }
+
+    /**
+     * @param room The state of a room recovered from the journal.
+     * @return The game that was in progress in the room when the server died, or {@code null} if there was none or
+     * either of its players did not identify themselves.
+     */
+    static SnapshotGame interruptedGame(RecoveredRoom room) {
+        if (!room.playing) {
+            return null;
+        }
+        String playerXName = PlayerStore.getName(room.playerXId);
+        String playerOName = PlayerStore.getName(room.playerOId);
+        if (playerXName == null || playerOName == null) {
+            return null;
+        }
+        return new SnapshotGame(room.roomId, playerXName, playerOName, room.board.pack(), room.turn);
+    }
+
+    /**
+     * Journals the start of a game.
+     *
+     * @param room The room the game is played in.
+     */
+    static void gameStarted(ServerGame room) {
+        if (channel != null) {
+            append(START, 0, room.roomId, room.playerX.playerId, room.playerO.playerId);
+        }
+    }
+
+    /**
+     * Journals the player ID of a player who identified themselves after their game started (a client can be matched
+     * before their name arrives), so that the game can still be held for them after a crash; see
+     * {@link ServerGame#identified(ServerClient)}.
+     *
+     * @param room   The room the game is played in.
+     * @param player The player who identified themselves.
+     */
+    static void playerIdentified(ServerGame room, ServerClient player) {
+        if (channel != null) {
+            append(PLAYER, player == room.playerX ? 0 : 1, room.roomId, player.playerId, 0);
+        }
+    }
+
+    /**
+     * Journals giving up on a game interrupted by a restart; see {@link ServerGame#releaseReservation(SnapshotGame)}.
+     *
+     * @param room The room the game was held in.
+     */
+    static void gameAbandoned(ServerGame room) {
+        if (channel != null) {
+            append(ABANDON, 0, room.roomId, 0, 0);
+        }
+    }
+
+    /**
+     * Journals the start of a game resumed after a restart (see {@link ServerGame#resumeGame(SnapshotGame)}), followed
+     * by the moves already on its board.
+     *
+     * @param room The room the game is played in.
+     */
+    static void gameResumed(ServerGame room) {
+        if (channel == null) {
+            return;
+        }
+        gameStarted(room);
+        for (int square = 0; square < 9; square++) {
+            if (!room.board.isEmpty(square)) {
+                moved(room, (room.board.x & 1 << square) != 0 ? 'X' : 'O', square);
+            }
+        }
+    }
+
+    /**
+     * Journals a move.
+     *
+     * @param room   The room the move was played in.
+     * @param role   The role that played the move, 'X' or 'O'.
+     * @param square The square played, 0-8.
+     */
+    static void moved(ServerGame room, char role, int square) {
+        if (channel != null) {
+            append(MOVE, role == 'X' ? square : square | 16, room.roomId, 0, 0);
+        }
+    }
+
+    /**
+     * Journals the end of a game, with the winner's streak.
+     *
+     * @param room   The room the game was played in.
+     * @param winner The player who won, or {@code null} if it was a tie.
+     */
+    static void gameEnded(ServerGame room, ServerClient winner) {
+        if (channel != null) {
+            int result = winner == null ? 0 : winner == room.playerX ? 1 : 2;
+            append(END, result, room.roomId, winner == null ? 0 : winner.playerId, room.streak);
+        }
+    }
+
+    /**
+     * Journals whether the winner chose to play again.
+     *
+     * @param room      The room the winner is seated in.
+     * @param playAgain Whether the winner plays again.
+     */
+    static void decided(ServerGame room, boolean playAgain) {
+        if (channel != null) {
+            append(DECISION, playAgain ? 1 : 0, room.roomId, 0, 0);
+        }
+    }
+
+    /**
+     * Appends a record: claims its position, then writes it straight into the mapped file. Never blocks on disk; the
+     * commit thread writes it out with the records around it.
+     */
+    static void append(byte type, int argument, int roomId, int a, int b) {
+        long recordPosition = position.getAndAdd(RECORD_SIZE);
+        MappedByteBuffer segment = segment(recordPosition);
+        if (segment == null) {
+            return;
+        }
+
+        int offset = (int) (recordPosition % SEGMENT_SIZE);
+        segment.put(offset, type);
+        segment.put(offset + 1, (byte) argument);
+        segment.putShort(offset + 2, (short) roomId);
+        segment.putInt(offset + 4, a);
+        segment.putInt(offset + 8, b);
+        segment.putInt(offset + 12, checksum(type, argument, roomId, a, b));
+    }
+
+    /**
+     * @return A standalone record, for {@link #compact()}.
+     */
+    static byte[] encode(byte type, int argument, int roomId, int a, int b) {
+        return ByteBuffer.allocate(RECORD_SIZE).put(type).put((byte) argument).putShort((short) roomId).putInt(a)
+                .putInt(b).putInt(checksum(type, argument, roomId, a, b)).array();
+    }
+
+    /**
+     * @param buffer The buffer holding the record.
+     * @param offset The offset of the record in the buffer.
+     * @return Whether the checksum of the record matches its contents.
+     */
+    static boolean isValid(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + 12) == checksum(buffer.get(offset), buffer.get(offset + 1),
+                buffer.getShort(offset + 2) & 0xFFFF, buffer.getInt(offset + 4), buffer.getInt(offset + 8));
+    }
+
+    /**
+     * @return A checksum of the contents of a record, to tell torn or stale records apart from valid ones; never 0.
+     */
+    static int checksum(byte type, int argument, int roomId, int a, int b) {
+        int hash = mix(0x811C9DC5, type << 24 | (argument & 0xFF) << 16 | roomId);
+        hash = mix(hash, a);
+        hash = mix(hash, b);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * @return The passed {@code hash} with the passed {@code value} mixed into it.
+     */
+    static int mix(int hash, int value) {
+        hash = (hash ^ value) * 0x01000193;
+        return hash ^ hash >>> 15;
+    }
+
+    /**
+     * Returns the mapped segment that holds the passed position, mapping it (and growing the file) if no append has
+     * reached it yet.
+     *
+     * @param recordPosition The position of a record.
+     * @return The segment, or {@code null} if it could not be mapped.
+     */
+    static MappedByteBuffer segment(long recordPosition) {
+        int index = (int) (recordPosition / SEGMENT_SIZE);
+        MappedByteBuffer[] segments = ServerJournal.segments;
+        if (index < segments.length) {
+            return segments[index];
+        }
+
+        mapLock.lock();
+        try {
+            segments = ServerJournal.segments;
+            if (index < segments.length) {
+                return segments[index];
+            }
+            MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+            System.arraycopy(segments, 0, grown, 0, segments.length);
+            for (int segment = segments.length; segment <= index; segment++) {
+                grown[segment] = channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_SIZE,
+                        SEGMENT_SIZE);
+            }
+            ServerJournal.segments = grown;
+            return grown[index];
+        } catch (IOException e) {
+            ServerLog.log(LogLevel.ERROR, "Failed to map the journal: %s", e.getMessage());
+            return null;
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the records appended since the last commit out to disk every {@link #COMMIT_INTERVAL}, as one group,
+     * until the journal is closed; see {@link #close()}.
+     */
+    static void commit() {
+        while (running) {
+            LockSupport.parkNanos(COMMIT_INTERVAL);
+            force();
+        }
+    }
+
+    /**
+     * Forces the records appended since the last commit out to disk, up to the first one that is not written yet: a
+     * position is claimed before the record is written into it (see {@link #append(byte, int, int, int, int)}), so
+     * records are only committed once their checksum matches (see {@link #isValid(ByteBuffer, int)}), and the rest
+     * are left for the next commit. Must only be called by the commit thread (or once it has stopped).
+     */
+    static void force() {
+        long claimed = position.get();
+        MappedByteBuffer[] segments = ServerJournal.segments;
+        long end = committed;
+        while (end < claimed) {
+            int index = (int) (end / SEGMENT_SIZE);
+            if (index >= segments.length || !isValid(segments[index], (int) (end % SEGMENT_SIZE))) {
+                break;
+            }
+            end += RECORD_SIZE;
+        }
+        while (committed < end) {
+            int index = (int) (committed / SEGMENT_SIZE);
+            int offset = (int) (committed % SEGMENT_SIZE);
+            int length = (int) Math.min(end - committed, SEGMENT_SIZE - offset);
+            segments[index].force(offset, length);
+            committed += length;
+        }
+    }
+
+    /**
+     * Stops the commit thread and forces the remaining records out to disk.
+     */
+    static void close() {
+        if (channel == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(commitThread);
+        try {
+            commitThread.join(1000);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+        force();
+    }
+}
@@ -0,0 +1,556 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+class ServerLobby {
+    // how far from the front of the queue clients are looked at to be moved to another server; see takeMovable()
+    static final int MOVABLE_SCAN = 16;
+
+    ServerQueue clients = new ServerQueue();
+
+    ServerGame[] rooms;
+    ArrayDeque<ServerGame> halfRooms = new ArrayDeque<>();
+    ArrayDeque<ServerGame> emptyRooms = new ArrayDeque<>();
+
+    /**
+     * Guards the queue ({@link #clients}) and the free room lists. Rooms call into the lobby from their own threads
+     * (see {@link ServerGame#execute(Runnable)}), but the lobby only ever queues commands for rooms, never waits on
+     * them.
+     */
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled whenever clients are queued or a room becomes free, i.e. whenever {@link #matchPlayers()} may have
+     * something to do; see {@link #signalMatch()}.
+     */
+    final Condition matchCondition = lock.newCondition();
+
+    /**
+     * The first queue position that may have changed since the last queue updates, or -1 if none; only used with the
+     * lobby lock held. Changes to the queue only lower it, and the queue updates are sent once per tick; see
+     * {@link #sendQueueUpdates()}.
+     */
+    int changedFrom = -1;
+
+    // clients speaking protocol version 1 added to the queue at position 256 or later, to be told "lots" (255) by the
+    // next queue updates without looking at the clients ahead of them; only used with the lobby lock held
+    final ArrayList<ServerClient> addedFarBack = new ArrayList<>();
+
+    // the clients to send queue updates to; only used by the tick thread
+    final ArrayList<ServerClient> updates = new ArrayList<>();
+
+    volatile boolean running = true;
+    volatile boolean draining = false; // no new games are started while draining, see stopMatching()
+    Thread matchThread = null;
+    Thread tickThread = null;
+
+    /**
+     * Creates {@code roomCount} rooms, which all start out free, and starts a new thread (see
+     * {@link Server#startThread(Runnable)}) that pairs queued clients into free rooms (see {@link #awaitMatch()} and
+     * {@link #matchPlayers()}), and another that sends queue updates every {@link Server#queueTick} milliseconds; see
+     * {@link #sendQueueUpdates()}.
+     *
+     * @param roomCount The number of games that can be played at once.
+     */
+    ServerLobby(int roomCount) {
+        rooms = new ServerGame[Math.max(1, roomCount)];
+        for (int index = 0; index < rooms.length; index++) {
+            rooms[index] = new ServerGame(this, index + 1);
+        }
+
+        matchThread = Server.startThread(() -> {
+            while (awaitMatch()) {
+                matchPlayers();
+            }
+        });
+        tickThread = Server.startThread(() -> {
+            while (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Server.queueTick));
+                sendQueueUpdates();
+                ServerCluster.report();
+            }
+        });
+    }
+
+    /**
+     * Stops pairing clients into rooms and sending queue updates, and wakes up the threads waiting to do so. Also
+     * stops the room threads; see {@link ServerGame#shutdown()}.
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            matchCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(tickThread);
+        for (ServerGame room : rooms) {
+            room.shutdown();
+        }
+    }
+
+    /**
+     * Stops pairing clients into rooms, so that no new games start while the server drains; see
+     * {@link Server#drain()}. Queued clients stay queued, and games in progress play on.
+     */
+    void stopMatching() {
+        lock.lock();
+        try {
+            draining = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the thread waiting in {@link #awaitMatch()}. Must be called with the lobby lock held.
+     */
+    void signalMatch() {
+        if (!clients.isEmpty() && hasFreeRoom()) {
+            matchCondition.signal();
+        }
+    }
+
+    /**
+     * Blocks until there is at least one queued client and one free room (and the server is not draining; see
+     * {@link #stopMatching()}), without using any CPU in the meantime.
+     *
+     * @return Boolean indicating whether clients can be matched, or {@code false} once the lobby shuts down.
+     */
+    boolean awaitMatch() {
+        lock.lock();
+        try {
+            while (running && (draining || clients.isEmpty() || !hasFreeRoom())) {
+                matchCondition.awaitUninterruptibly();
+            }
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Whether any room is free (or only has one player seated).
+     */
+    boolean hasFreeRoom() {
+        return !halfRooms.isEmpty() || !emptyRooms.isEmpty();
+    }
+
+    /**
+     * @return A new client ID, for clients that don't join the queue; see {@link ServerBot}.
+     */
+    int nextClientId() {
+        lock.lock();
+        try {
+            return ++ServerClient.lastClientId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Assigns the client an ID and adds them to the end of the queue; they are sent their position in the queue with
+     * the next queue updates, unless they are seated before then.
+     *
+     * @param client The client attempting to join.
+     * @return Boolean indicating success.
+     */
+    boolean join(ServerClient client) {
+        lock.lock();
+        try {
+            client.clientId = ++ServerClient.lastClientId;
+
+            client.readyTime = System.nanoTime();
+            queued(client, clients.add(client));
+            signalMatch();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the client from the queue; the clients that were behind them are sent their new positions with the next
+     * queue updates.
+     *
+     * @param client The client leaving.
+     * @return Boolean indicating whether the client was queued.
+     */
+    boolean leave(ServerClient client) {
+        lock.lock();
+        try {
+            int clientIndex = clients.remove(client);
+            if (clientIndex == -1) {
+                return false;
+            }
+            queueChanged(clientIndex);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves a client that just left a room (after a loss or tie) to the end of the queue; they are sent their position
+     * in the queue with the next queue updates, unless they are seated before then. Does nothing if the client is no
+     * longer connected.
+     *
+     * @param client The client to queue again.
+     */
+    void requeue(ServerClient client) {
+        lock.lock();
+        try {
+            if (client.state != ClientState.CONNECTED) {
+                return;
+            }
+            client.readyTime = System.nanoTime();
+            client.restoreRank = -1;
+            queued(client, clients.add(client));
+            signalMatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a client who reconnected after a restart back at their position in the queue from before it: behind the
+     * other clients put back at an earlier position, but ahead of every client that was not queued before the
+     * restart; see {@link ServerSnapshot#identified(ServerClient, String)}. The client is sent their new position with
+     * the next queue updates, unless they are seated before then. Does nothing if the client is no longer connected.
+     *
+     * @param client The client to put back.
+     * @param rank   The client's position in the queue before the restart.
+     */
+    void restorePosition(ServerClient client, int rank) {
+        lock.lock();
+        try {
+            if (client.state != ClientState.CONNECTED) {
+                return;
+            }
+            clients.remove(client);
+            ArrayList<ServerClient> ahead = new ArrayList<>();
+            while (!clients.isEmpty()) {
+                ServerClient front = clients.get(0);
+                if (front.restoreRank == -1 || front.restoreRank > rank) {
+                    break;
+                }
+                ahead.add(clients.poll());
+            }
+            client.restoreRank = rank;
+            clients.addFirst(client);
+            for (int index = ahead.size() - 1; index >= 0; index--) {
+                clients.addFirst(ahead.get(index));
+            }
+            queued(client, ahead.size());
+            queueChanged(0);
+            signalMatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts clients that a room could not seat back at the front of the queue, in order; see
+     * {@link #queueChanged(int)}.
+     * Clients that are no longer connected are dropped.
+     *
+     * @param returned The clients to put back.
+     */
+    void requeueFront(List<ServerClient> returned) {
+        lock.lock();
+        try {
+            for (int index = returned.size() - 1; index >= 0; index--) {
+                ServerClient client = returned.get(index);
+                if (client.state == ClientState.CONNECTED) {
+                    clients.addFirst(client);
+                }
+            }
+            queueChanged(0);
+            signalMatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists a room as free, replacing any previous listing of it. Rooms with one player seated are offered clients
+     * before empty rooms.
+     *
+     * @param room   The room waiting for players.
+     * @param seated The number of players already seated in the room.
+     * @return Whether the queue is empty, i.e. no client can be offered to the room right now.
+     */
+    boolean roomFree(ServerGame room, int seated) {
+        lock.lock();
+        try {
+            halfRooms.remove(room);
+            emptyRooms.remove(room);
+            (seated == 1 ? halfRooms : emptyRooms).add(room);
+            signalMatch();
+            return clients.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes any listing of a room as free.
+     *
+     * @param room The room that is no longer free.
+     */
+    void roomBusy(ServerGame room) {
+        lock.lock();
+        try {
+            halfRooms.remove(room);
+            emptyRooms.remove(room);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes clients from the front of the queue for as many free rooms as possible (see {@link #queueChanged(int)}),
+     * then offers the taken clients to their rooms; see {@link ServerGame#seatPlayers(List)}.
+     * <p>
+     * The offers are queued as commands for the rooms (see {@link ServerGame#execute(Runnable)}) after the lobby lock
+     * is released, as rooms call back into the lobby while seating players.
+     *
+     * @return Boolean indicating whether any clients were offered to a room.
+     */
+    boolean matchPlayers() {
+        ArrayList<ServerGame> offerRooms = new ArrayList<>();
+        ArrayList<List<ServerClient>> offerPlayers = new ArrayList<>();
+
+        lock.lock();
+        try {
+            while (!clients.isEmpty() && hasFreeRoom()) {
+                int seats = !halfRooms.isEmpty() ? 1 : 2;
+                ServerGame room = seats == 1 ? halfRooms.poll() : emptyRooms.poll();
+
+                ArrayList<ServerClient> players = new ArrayList<>(seats);
+                while (players.size() < seats && !clients.isEmpty()) {
+                    players.add(clients.poll());
+                }
+                offerRooms.add(room);
+                offerPlayers.add(players);
+            }
+            if (offerRooms.isEmpty()) {
+                return false;
+            }
+            queueChanged(0);
+        } finally {
+            lock.unlock();
+        }
+
+        for (int index = 0; index < offerRooms.size(); index++) {
+            ServerGame room = offerRooms.get(index);
+            List<ServerClient> players = offerPlayers.get(index);
+            room.execute(() -> room.seatPlayers(players));
+        }
+        return true;
+    }
+
+    /**
+     * Notes that the positions of the clients at or after the passed {@code position} in the queue may have changed,
+     * for the next queue updates; see {@link #sendQueueUpdates()}. Only called with the lobby lock held.
+     *
+     * @param position The first position that may have changed.
+     */
+    void queueChanged(int position) {
+        if (changedFrom == -1 || position < changedFrom) {
+            changedFrom = position;
+        }
+    }
+
+    /**
+     * Notes that the client was added to the queue at the passed {@code position}, for the next queue updates; see
+     * {@link #sendQueueUpdates()}. Only called with the lobby lock held.
+     *
+     * @param client   The client added to the queue.
+     * @param position The position of the client in the queue.
+     */
+    void queued(ServerClient client, int position) {
+        client.sentPosition = -1;
+        if (position < 256 || client.exactPositions()) {
+            queueChanged(position);
+            return;
+        }
+        addedFarBack.add(client);
+    }
+
+    /**
+     * Has a client that switched to protocol version 2 told their exact position with the next queue updates, if
+     * they are queued: they may have been told 255 ("lots") in version 1; see {@link Protocol#queue(int)}.
+     *
+     * @param client The client that switched protocol versions.
+     */
+    void upgraded(ServerClient client) {
+        lock.lock();
+        try {
+            int position = clients.indexOf(client);
+            if (position != -1) {
+                queueChanged(position);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends every client whose position in the queue changed since they were last told (see
+     * {@link ServerClient#sentPosition}) their new position ('Q'). Runs on the tick thread, so any number of changes
+     * to the queue within one tick cost a single message per client.
+     * <p>
+     * With the lobby lock held, only the clients from the first changed position (see {@link #queueChanged(int)})
+     * onwards are looked at, so a long queue of idle clients costs nothing. Clients that speak protocol version 1 are
+     * told 255 or less (see {@link Protocol#queue(int)}), so those joining at position 256 or later are told 255
+     * without the clients ahead of them being looked at; see {@link #queued(ServerClient, int)}. The messages are sent
+     * after the lock is released; in NIO mode, as one task per event loop (see {@link NioEventLoop#execute(Runnable)})
+     * rather than one write per client from this thread.
+     */
+    void sendQueueUpdates() {
+        lock.lock();
+        try {
+            for (ServerClient client : addedFarBack) {
+                int position = clients.indexOf(client);
+                if (position == -1) {
+                    continue;
+                }
+                position = client.exactPositions() ? position : Math.min(position, 255); // 255 = lots
+                if (client.sentPosition != position) {
+                    client.sentPosition = position;
+                    updates.add(client);
+                }
+            }
+            addedFarBack.clear();
+            if (changedFrom != -1) {
+                clients.forEachBetween(changedFrom, clients.size(), (client, index) -> {
+                    int position = client.exactPositions() ? index : Math.min(index, 255); // 255 = lots
+                    if (client.state == ClientState.CONNECTED && client.sentPosition != position) {
+                        client.sentPosition = position;
+                        updates.add(client);
+                    }
+                });
+            }
+            changedFrom = -1;
+        } finally {
+            lock.unlock();
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        HashMap<NioEventLoop, ArrayList<ServerClient>> batches = new HashMap<>();
+        for (ServerClient client : updates) {
+            if (client instanceof NioServerClient nioClient) {
+                batches.computeIfAbsent(nioClient.eventLoop, eventLoop -> new ArrayList<>()).add(client);
+            } else {
+                sendPosition(client);
+            }
+        }
+        batches.forEach((eventLoop, batch) -> eventLoop.execute(() -> batch.forEach(this::sendPosition)));
+        updates.clear();
+    }
+
+    /**
+     * Sends the client their position in the queue ('Q'), i.e. how many clients are ahead of them, unless they have
+     * left the queue for a room since; see {@link ServerClient#sentPosition}.
+     *
+     * @param client The client to send the position to.
+     */
+    void sendPosition(ServerClient client) {
+        if (client.state == ClientState.CONNECTED && client.game == null) {
+            client.sendPosition(client.sentPosition);
+            ServerMetrics.queueUpdates.increment();
+        }
+    }
+
+    /**
+     * @return The number of rooms where a client that can be moved to another server (see
+     * {@link ServerClient#canRedirect()}) is waiting alone for an opponent; see {@link ServerGame#loneWaiter}. Bots
+     * and clients speaking protocol version 1 are never moved.
+     */
+    int countWaitingAlone() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (ServerGame room : halfRooms) {
+                ServerClient player = room.loneWaiter;
+                if (player != null && player.canRedirect()) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of clients near the front of the queue (up to {@link #MOVABLE_SCAN}) that can be moved to
+     * another server; see {@link ServerClient#canRedirect()}.
+     */
+    int countMovable() {
+        lock.lock();
+        try {
+            int[] count = {0};
+            clients.forEachBetween(0, MOVABLE_SCAN, (client, index) -> {
+                if (client.canRedirect()) {
+                    count[0]++;
+                }
+            });
+            return count[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the first client near the front of the queue (up to {@link #MOVABLE_SCAN}) that can be moved to another
+     * server (see {@link ServerClient#canRedirect()}), so that they are not seated here in the meantime; the clients
+     * that were behind them are sent their new positions with the next queue updates.
+     *
+     * @return The client removed, or {@code null} if none can be moved.
+     */
+    ServerClient takeMovable() {
+        lock.lock();
+        try {
+            for (int index = 0; index < Math.min(MOVABLE_SCAN, clients.size()); index++) {
+                ServerClient client = clients.get(index);
+                if (client.canRedirect()) {
+                    clients.remove(client);
+                    queueChanged(index);
+                    return client;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return A room where a client that can be moved to another server is waiting alone for an opponent, or
+     * {@code null} if none; see {@link ServerGame#loneWaiter}.
+     */
+    ServerGame findWaitingAlone() {
+        lock.lock();
+        try {
+            for (ServerGame room : halfRooms) {
+                ServerClient player = room.loneWaiter;
+                if (player != null && player.canRedirect()) {
+                    return room;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+class ServerLog {
+    static final int CAPACITY = 1 << 14;
+    static final int MASK = CAPACITY - 1;
+
+    static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    static volatile LogLevel level = LogLevel.INFO;
+
+    /**
+     * The ring buffer, allocated up front. Game, lobby and client threads claim slots with a ticket from
+     * {@link #tail} and fill them; the writer thread (see {@link #run()}) is the only one to read them, in ticket
+     * order, from {@link #head}. Each slot's {@link LogEntry#sequence} tells whose turn it is, so neither side ever
+     * takes a lock.
+     */
+    static final LogEntry[] entries = new LogEntry[CAPACITY];
+
+    static final AtomicLong tail = new AtomicLong();
+    static long head = 0; // only used by the writer thread
+
+    static final LongAdder dropped = new LongAdder();
+    static long reportedDropped = 0; // only used by the writer thread
+
+    static volatile boolean running = true;
+    static volatile boolean sleeping = false;
+    static final Thread writer;
+
+    static {
+        for (int index = 0; index < CAPACITY; index++) {
+            entries[index] = new LogEntry(index);
+        }
+
+        writer = new Thread(ServerLog::run, "ServerLog");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param level The level to check.
+     * @return Whether messages of the passed {@code level} are logged; see {@link #level}.
+     */
+    static boolean isEnabled(LogLevel level) {
+        return level.compareTo(ServerLog.level) >= 0;
+    }
+
+    /**
+     * Logs a message; see {@link #log(LogLevel, String, Object, Object, Object, Object)}.
+     */
+    static void log(LogLevel level, String format) {
+        if (isEnabled(level)) {
+            publish(level, format, null, null, null, null);
+        }
+    }
+
+    /**
+     * Logs a message; see {@link #log(LogLevel, String, Object, Object, Object, Object)}.
+     */
+    static void log(LogLevel level, String format, Object arg0) {
+        if (isEnabled(level)) {
+            publish(level, format, arg0, null, null, null);
+        }
+    }
+
+    /**
+     * Logs a message; see {@link #log(LogLevel, String, Object, Object, Object, Object)}.
+     */
+    static void log(LogLevel level, String format, Object arg0, Object arg1) {
+        if (isEnabled(level)) {
+            publish(level, format, arg0, arg1, null, null);
+        }
+    }
+
+    /**
+     * Logs a message; see {@link #log(LogLevel, String, Object, Object, Object, Object)}.
+     */
+    static void log(LogLevel level, String format, Object arg0, Object arg1, Object arg2) {
+        if (isEnabled(level)) {
+            publish(level, format, arg0, arg1, arg2, null);
+        }
+    }
+
+    /**
+     * Logs a message if its level is enabled (see {@link #isEnabled(LogLevel)}), without blocking.
+     * <p>
+     * Only the format string and argument references are stored (see {@link #capture(Object)}); the message is
+     * formatted and written by the writer thread, and disabled levels cost nothing. There
+     * are overloads for each number of arguments, so no array is allocated for them either.
+     *
+     * @param level  The level of the message.
+     * @param format The message format string, without a trailing new line; see
+     *               {@link String#format(String, Object...)}.
+     * @param arg0   The first format argument.
+     * @param arg1   The second format argument.
+     * @param arg2   The third format argument.
+     * @param arg3   The fourth format argument.
+     */
+    static void log(LogLevel level, String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(level)) {
+            publish(level, format, arg0, arg1, arg2, arg3);
+        }
+    }
+
+    /**
+     * Claims a slot of the ring buffer, fills it and hands it to the writer thread, waking the writer up if it is
+     * sleeping. If the ring buffer is full, the message is dropped (and counted, see {@link #dropped}) rather than
+     * waiting for the writer thread.
+     */
+    static void publish(LogLevel level, String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+        long time = System.currentTimeMillis();
+
+        LogEntry entry;
+        long ticket;
+        while (true) {
+            ticket = tail.get();
+            entry = entries[(int) (ticket & MASK)];
+            long sequence = entry.sequence;
+            if (sequence < ticket) { // not yet written by the writer thread since the last lap
+                dropped.increment();
+                return;
+            }
+            if (sequence == ticket && tail.compareAndSet(ticket, ticket + 1)) {
+                break;
+            }
+        }
+
+        entry.time = time;
+        entry.level = level;
+        entry.format = format;
+        entry.arg0 = capture(arg0);
+        entry.arg1 = capture(arg1);
+        entry.arg2 = capture(arg2);
+        entry.arg3 = capture(arg3);
+        entry.sequence = ticket + 1;
+
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Clients are described by their role in their game room (see {@link ServerClient#toString()}), which will have
+     * changed by the time the writer thread formats the message, so they are captured as their (cached) string
+     * representation right away. Every other argument is captured as is.
+     *
+     * @param arg The format argument to capture.
+     * @return The value to format the message with.
+     */
+    static Object capture(Object arg) {
+        return arg instanceof ServerClient ? arg.toString() : arg;
+    }
+
+    /**
+     * Writes messages from the ring buffer to the console in batches, sleeping whenever it is empty, until
+     * {@link #shutdown()} is called and every message has been written.
+     */
+    static void run() {
+        StringBuilder builder = new StringBuilder(4096);
+        while (true) {
+            int written = drain(builder);
+            if (builder.length() > 0) {
+                System.out.print(builder);
+                System.out.flush();
+                builder.setLength(0);
+            }
+            if (written > 0) {
+                continue;
+            }
+
+            if (!running) {
+                return;
+            }
+            sleeping = true;
+            if (isEmpty()) {
+                LockSupport.park();
+            }
+            sleeping = false;
+        }
+    }
+
+    /**
+     * @return Whether the writer thread has written every message published so far. Must only be called by the
+     * writer thread.
+     */
+    static boolean isEmpty() {
+        return entries[(int) (head & MASK)].sequence != head + 1;
+    }
+
+    /**
+     * Formats up to {@link #CAPACITY} published messages into the passed {@code builder} and frees their slots. Must
+     * only be called by the writer thread.
+     *
+     * @param builder The builder to append the formatted lines to.
+     * @return The number of messages formatted.
+     */
+    static int drain(StringBuilder builder) {
+        int written = 0;
+        while (written < CAPACITY && !isEmpty()) {
+            LogEntry entry = entries[(int) (head & MASK)];
+            appendLine(builder, entry.time, entry.level, formatMessage(entry));
+            entry.clear();
+            entry.sequence = head + CAPACITY;
+            head++;
+            written++;
+        }
+
+        long droppedNow = dropped.sum();
+        if (droppedNow != reportedDropped) {
+            appendLine(builder, System.currentTimeMillis(), LogLevel.WARNING,
+                    String.format("Dropped %d log messages, the log could not keep up", droppedNow - reportedDropped));
+            reportedDropped = droppedNow;
+        }
+        return written;
+    }
+
+    /**
+     * @param entry The entry to format.
+     * @return The formatted message, or a description of the failure if formatting it threw.
+     */
+    static String formatMessage(LogEntry entry) {
+        try {
+            return entry.formatMessage();
+        } catch (RuntimeException e) {
+            return String.format("Failed to format \"%s\": %s", entry.format, e);
+        }
+    }
+
+    /**
+     * Appends a line with the time, level and message to the passed {@code builder}.
+     */
+    static void appendLine(StringBuilder builder, long time, LogLevel level, String message) {
+        builder.append(TIME_FORMAT.format(Instant.ofEpochMilli(time))).append(' ');
+        builder.append(level.name());
+        for (int padding = level.name().length(); padding < 8; padding++) {
+            builder.append(' ');
+        }
+        builder.append(message).append('\n');
+    }
+
+    /**
+     * Stops the writer thread once it has written every message published so far, and waits for it to do so.
+     */
+    static void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+}
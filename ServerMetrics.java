@@ -0,0 +1,280 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+class ServerMetrics implements ServerMetricsMXBean {
+    static final String OBJECT_NAME = "TicTacToeProtocol:type=ServerMetrics";
+
+    // striped counters (see LongAdder), so that recording from many threads at once does not contend
+    static final LongAdder connects = new LongAdder();
+    static final LongAdder disconnects = new LongAdder();
+    static final LongAdder games = new LongAdder();
+    static final LongAdder wins = new LongAdder();
+    static final LongAdder ties = new LongAdder();
+    static final LongAdder queueUpdates = new LongAdder();
+    static final LongAdder evictions = new LongAdder();
+    static final LongAdder redirects = new LongAdder();
+    static final LongAdder rejected = new LongAdder(); // invalid messages, each disconnecting its client
+    static final LongAdder throttled = new LongAdder(); // moves dropped for going over a client's rate limit
+    static final LongAdder floods = new LongAdder(); // clients disconnected for flooding
+
+    // in nanoseconds
+    static final LatencyHistogram playTurnTime = new LatencyHistogram();
+    static final LatencyHistogram sendTime = new LatencyHistogram();
+
+    static HttpServer httpServer = null;
+
+    /**
+     * Registers the metrics with the platform MBean server (see {@link ServerMetricsMXBean}) and, if a port was
+     * passed, starts serving them as text over HTTP on the loopback address (see {@link #render()}), along with the
+     * leaderboard; see {@link PlayerStore#renderLeaderboard()}.
+     *
+     * @param port The port to serve the metrics on, or 0 to not serve them over HTTP.
+     */
+    static void start(int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetrics(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            ServerLog.log(LogLevel.WARNING, "Failed to register metrics with JMX: %s", e.getMessage());
+        }
+
+        if (port == 0) {
+            return;
+        }
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            ServerLog.log(LogLevel.WARNING, "Failed to serve metrics on port %d: %s", port, e.getMessage());
+            return;
+        }
+        httpServer.createContext("/metrics", ServerMetrics::handle);
+        httpServer.createContext("/leaderboard", ServerMetrics::handleLeaderboard);
+        httpServer.start();
+        ServerLog.log(LogLevel.INFO, "Serving metrics on http://%s:%d/metrics",
+                InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    /**
+     * Stops serving the metrics over HTTP.
+     */
+    static void shutdown() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    /**
+     * Answers a scrape with the current metrics; see {@link #render()}.
+     *
+     * @param exchange The HTTP request and response.
+     * @throws IOException From writing the response.
+     */
+    static void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Answers a request for the leaderboard; see {@link PlayerStore#renderLeaderboard()}.
+     *
+     * @param exchange The HTTP request and response.
+     * @throws IOException From writing the response.
+     */
+    static void handleLeaderboard(HttpExchange exchange) throws IOException {
+        byte[] body = PlayerStore.renderLeaderboard().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return The current metrics in the Prometheus text format: one line per counter and gauge, and the count and
+     * p50/p99/p999 (in seconds) of each latency histogram.
+     */
+    static String render() {
+        StringBuilder builder = new StringBuilder();
+        appendMetric(builder, "counter", "tictactoe_connects_total", connects.sum());
+        appendMetric(builder, "counter", "tictactoe_disconnects_total", disconnects.sum());
+        appendMetric(builder, "counter", "tictactoe_games_total", games.sum());
+        appendMetric(builder, "counter", "tictactoe_wins_total", wins.sum());
+        appendMetric(builder, "counter", "tictactoe_ties_total", ties.sum());
+        appendMetric(builder, "counter", "tictactoe_queue_updates_total", queueUpdates.sum());
+        appendMetric(builder, "counter", "tictactoe_evictions_total", evictions.sum());
+        appendMetric(builder, "counter", "tictactoe_redirects_total", redirects.sum());
+        appendMetric(builder, "counter", "tictactoe_rejected_messages_total", rejected.sum());
+        appendMetric(builder, "counter", "tictactoe_throttled_messages_total", throttled.sum());
+        appendMetric(builder, "counter", "tictactoe_floods_total", floods.sum());
+        appendMetric(builder, "gauge", "tictactoe_queue_depth", getQueueDepthNow());
+        appendMetric(builder, "gauge", "tictactoe_active_games", getActiveGamesNow());
+        appendHistogram(builder, "tictactoe_play_turn_seconds", playTurnTime);
+        appendHistogram(builder, "tictactoe_send_seconds", sendTime);
+        return builder.toString();
+    }
+
+    /**
+     * Appends a counter or gauge in the Prometheus text format.
+     *
+     * @param builder The builder to append to.
+     * @param type    The metric type, "counter" or "gauge".
+     * @param name    The metric name.
+     * @param value   The metric value.
+     */
+    static void appendMetric(StringBuilder builder, String type, String name, long value) {
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends the count and p50/p99/p999 of a latency histogram (recorded in nanoseconds) as a summary in seconds,
+     * in the Prometheus text format.
+     *
+     * @param builder   The builder to append to.
+     * @param name      The metric name.
+     * @param histogram The histogram to summarize.
+     */
+    static void appendHistogram(StringBuilder builder, String name, LatencyHistogram histogram) {
+        builder.append("# TYPE ").append(name).append(" summary\n");
+        for (String quantile : new String[]{"0.5", "0.99", "0.999"}) {
+            double seconds = histogram.percentile(Double.parseDouble(quantile) * 100) / 1e9;
+            builder.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(seconds).append('\n');
+        }
+        builder.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+    /**
+     * @return The number of clients waiting in the queue; read without the lobby lock, so it may be slightly stale.
+     */
+    static int getQueueDepthNow() {
+        ServerLobby lobby = Server.lobby;
+        return lobby == null ? 0 : lobby.clients.size();
+    }
+
+    /**
+     * @return The number of rooms with a game in progress; read without involving the room threads (see
+     * {@link ServerGame#state}), so it may be slightly stale.
+     */
+    static int getActiveGamesNow() {
+        ServerLobby lobby = Server.lobby;
+        if (lobby == null) {
+            return 0;
+        }
+        int active = 0;
+        for (ServerGame room : lobby.rooms) {
+            if (room.state == GameState.PLAYING) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public long getConnects() {
+        return connects.sum();
+    }
+
+    @Override
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    @Override
+    public long getGames() {
+        return games.sum();
+    }
+
+    @Override
+    public long getWins() {
+        return wins.sum();
+    }
+
+    @Override
+    public long getTies() {
+        return ties.sum();
+    }
+
+    @Override
+    public long getQueueUpdates() {
+        return queueUpdates.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getRedirects() {
+        return redirects.sum();
+    }
+
+    @Override
+    public long getRejectedMessages() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getThrottledMessages() {
+        return throttled.sum();
+    }
+
+    @Override
+    public long getFloods() {
+        return floods.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueueDepthNow();
+    }
+
+    @Override
+    public int getActiveGames() {
+        return getActiveGamesNow();
+    }
+
+    @Override
+    public long getPlayTurnP50Micros() {
+        return playTurnTime.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getPlayTurnP99Micros() {
+        return playTurnTime.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getPlayTurnP999Micros() {
+        return playTurnTime.percentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getSendP50Micros() {
+        return sendTime.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getSendP99Micros() {
+        return sendTime.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getSendP999Micros() {
+        return sendTime.percentile(99.9) / 1000;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * The server metrics as exposed over JMX; see {@link ServerMetrics}. Latencies are in microseconds.
+ */
+public interface ServerMetricsMXBean {
+    long getConnects();
+
+    long getDisconnects();
+
+    long getGames();
+
+    long getWins();
+
+    long getTies();
+
+    long getQueueUpdates();
+
+    long getEvictions();
+
+    long getRedirects();
+
+    long getRejectedMessages();
+
+    long getThrottledMessages();
+
+    long getFloods();
+
+    int getQueueDepth();
+
+    int getActiveGames();
+
+    long getPlayTurnP50Micros();
+
+    long getPlayTurnP99Micros();
+
+    long getPlayTurnP999Micros();
+
+    long getSendP50Micros();
+
+    long getSendP99Micros();
+
+    long getSendP999Micros();
+}
@@ -0,0 +1,5 @@
+enum ServerMode {
+    BLOCKING,
+    VIRTUAL,
+    NIO
+}
\ No newline at end of file
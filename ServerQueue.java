@@ -0,0 +1,258 @@
+import java.util.function.ObjIntConsumer;
+
+class ServerQueue {
+    static final int MIN_CAPACITY = 16;
+
+    ServerClient[] slots = new ServerClient[MIN_CAPACITY];
+    int[] tree = new int[MIN_CAPACITY + 1];
+    int mask = MIN_CAPACITY - 1;
+
+    long head = 0;
+    long tail = 0;
+    int size = 0;
+
+    /**
+     * A queue of clients that supports enqueueing at either end, removal from anywhere and position (rank) lookups,
+     * all in O(log n).
+     * <p>
+     * Every client is given a ticket (see {@link ServerClient#queueTicket}) that increases from front to back; tickets
+     * map onto a ring of slots, and a Fenwick tree over the slots counts how many of them are in use, so the position
+     * of a ticket is the number of used slots between the head of the ring and the ticket.
+     */
+    ServerQueue() {
+    }
+
+    /**
+     * @return The number of clients in the queue.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether the queue is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the client to the end of the queue.
+     *
+     * @param client The client to add.
+     * @return The position of the client in the queue.
+     */
+    int add(ServerClient client) {
+        if (tail - head == slots.length) {
+            resize();
+        }
+        place(client, tail++);
+        return size - 1;
+    }
+
+    /**
+     * Adds the client to the front of the queue.
+     *
+     * @param client The client to add.
+     */
+    void addFirst(ServerClient client) {
+        if (tail - head == slots.length) {
+            resize();
+        }
+        place(client, --head);
+    }
+
+    /**
+     * Removes and returns the client at the front of the queue.
+     *
+     * @return The client that was at the front of the queue, or {@code null} if the queue is empty.
+     */
+    ServerClient poll() {
+        if (size == 0) {
+            return null;
+        }
+        ServerClient client = slots[slot(head)];
+        remove(client);
+        return client;
+    }
+
+    /**
+     * Removes the client from the queue.
+     *
+     * @param client The client to remove.
+     * @return The position the client had in the queue, or -1 if the client was not in the queue.
+     */
+    int remove(ServerClient client) {
+        int position = indexOf(client);
+        if (position == -1) {
+            return -1;
+        }
+
+        int slot = slot(client.queueTicket);
+        slots[slot] = null;
+        update(slot, -1);
+        size--;
+
+        // skip over the holes left at the front by clients removed from the middle
+        if (size == 0) {
+            head = tail;
+        } else {
+            while (slots[slot(head)] == null) {
+                head++;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @param client The client to look up.
+     * @return The position of the client in the queue, or -1 if the client is not in the queue.
+     */
+    int indexOf(ServerClient client) {
+        long ticket = client.queueTicket;
+        if (ticket < head || ticket >= tail || slots[slot(ticket)] != client) {
+            return -1;
+        }
+
+        int headSlot = slot(head);
+        int ticketSlot = slot(ticket);
+        if (headSlot <= ticketSlot) {
+            return prefix(ticketSlot) - prefix(headSlot);
+        }
+        return size - prefix(headSlot) + prefix(ticketSlot);
+    }
+
+    /**
+     * @param position The position to look up.
+     * @return The client at the passed {@code position} in the queue.
+     * @throws IndexOutOfBoundsException If the position is out of range.
+     */
+    ServerClient get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException(position);
+        }
+
+        int headSlot = slot(head);
+        int wrapped = prefix(headSlot);
+        int unwrapped = size - wrapped;
+        return slots[find(position < unwrapped ? wrapped + position : position - unwrapped)];
+    }
+
+    /**
+     * Calls the passed {@code action} with every client from the passed {@code from} position up to (but excluding)
+     * the passed {@code to} position, along with their position, from front to back.
+     *
+     * @param from   The position of the first client to include.
+     * @param to     The position after the last client to include; may be past the end of the queue.
+     * @param action The action to call with each client and their position.
+     */
+    void forEachBetween(int from, int to, ObjIntConsumer<ServerClient> action) {
+        if (from >= Math.min(to, size)) {
+            return;
+        }
+        int index = from;
+        for (long ticket = get(from).queueTicket; ticket < tail && index < to; ticket++) {
+            ServerClient client = slots[slot(ticket)];
+            if (client != null) {
+                action.accept(client, index++);
+            }
+        }
+    }
+
+    /**
+     * @param ticket The ticket to map.
+     * @return The slot the passed {@code ticket} maps onto.
+     */
+    int slot(long ticket) {
+        return (int) (ticket & mask);
+    }
+
+    /**
+     * Puts the client in the slot for the passed {@code ticket}.
+     *
+     * @param client The client to put in the slot.
+     * @param ticket The ticket to give to the client.
+     */
+    void place(ServerClient client, long ticket) {
+        client.queueTicket = ticket;
+        int slot = slot(ticket);
+        slots[slot] = client;
+        update(slot, 1);
+        size++;
+    }
+
+    /**
+     * Moves the clients into a new ring sized for twice the clients in the queue (or the current size, if the ring
+     * is mostly holes), giving them new consecutive tickets, and rebuilds the Fenwick tree in O(n).
+     */
+    void resize() {
+        int capacity = slots.length;
+        while (capacity < size * 2) {
+            capacity *= 2;
+        }
+
+        ServerClient[] oldSlots = slots;
+        long oldHead = head;
+        long oldTail = tail;
+        int oldMask = mask;
+
+        slots = new ServerClient[capacity];
+        tree = new int[capacity + 1];
+        mask = capacity - 1;
+        head = 0;
+        tail = 0;
+        for (long ticket = oldHead; ticket < oldTail; ticket++) {
+            ServerClient client = oldSlots[(int) (ticket & oldMask)];
+            if (client != null) {
+                client.queueTicket = tail;
+                slots[(int) tail] = client;
+                tree[(int) ++tail] = 1;
+            }
+        }
+        for (int index = 1; index <= capacity; index++) {
+            int parent = index + (index & -index);
+            if (parent <= capacity) {
+                tree[parent] += tree[index];
+            }
+        }
+    }
+
+    /**
+     * Adds the passed {@code delta} to the count of the passed {@code slot} in the Fenwick tree.
+     *
+     * @param slot  The slot to update.
+     * @param delta The amount to add.
+     */
+    void update(int slot, int delta) {
+        for (int index = slot + 1; index < tree.length; index += index & -index) {
+            tree[index] += delta;
+        }
+    }
+
+    /**
+     * @param slot The slot to count up to (exclusive).
+     * @return The number of used slots before the passed {@code slot}.
+     */
+    int prefix(int slot) {
+        int count = 0;
+        for (int index = slot; index > 0; index -= index & -index) {
+            count += tree[index];
+        }
+        return count;
+    }
+
+    /**
+     * @param rank The number of used slots to skip.
+     * @return The used slot that has {@code rank} used slots before it.
+     */
+    int find(int rank) {
+        int slot = 0;
+        for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+            if (slot + step <= slots.length && tree[slot + step] <= rank) {
+                slot += step;
+                rank -= tree[slot];
+            }
+        }
+        return slot;
+    }
+}
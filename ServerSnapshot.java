@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class ServerSnapshot {
+    static final int MAGIC = 0x54545453; // "TTTS"
+    static final byte VERSION = 1;
+
+    // how long after a restart the snapshot is honoured: queue positions are restored for players reconnecting within
+    // it, and unfinished games are held for their players until it ends
+    static final long RESTORE_WINDOW = 60;
+
+    static Path path = null;
+    static ServerLobby lobby = null;
+
+    // the queue positions (by player name, counted from 0) and unfinished games (by the name of either player) of
+    // the players who have not reconnected yet; only used while holding the ServerSnapshot class lock
+    static final HashMap<String, Integer> queueRanks = new HashMap<>();
+    static final HashMap<String, SnapshotGame> games = new HashMap<>();
+    static long restoreDeadline = 0;
+
+    // the rooms' streaks and unfinished games, restored into the rooms; see restore(ServerLobby)
+    static final ArrayList<RecoveredRoom> streaks = new ArrayList<>();
+    static final ArrayList<SnapshotGame> unfinished = new ArrayList<>();
+
+    /**
+     * Loads the snapshot written when the server last stopped (see {@link #write(ServerLobby)}), if there is one, and
+     * deletes it, so that it is only ever restored once. A snapshot that is corrupt or of another version is skipped.
+     * <p>
+     * The snapshot file is, in order:
+     * <ul>
+     *     <li>{@link #MAGIC} and {@link #VERSION}</li>
+     *     <li>the client ID counter (see {@link ServerClient#lastClientId})</li>
+     *     <li>the number of queued players, then their names in queue order</li>
+     *     <li>the number of rooms, then for each: its ID, the ID of the player holding its streak (see
+     *     {@link ServerGame#lastWinnerId}) and the streak, and whether a game was in progress; if so, the names of its
+     *     players, the packed board (see {@link Bitboard#pack()}) and the number of moves played</li>
+     * </ul>
+     * Names are a length byte followed by the name in ASCII.
+     *
+     * @param file The snapshot file.
+     * @throws IOException From reading or deleting the snapshot file.
+     */
+    static void load(String file) throws IOException {
+        path = Path.of(file);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        Files.delete(path);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                ServerLog.log(LogLevel.WARNING, "Skipped snapshot %s of an unknown version", path);
+                return;
+            }
+            ServerClient.lastClientId = Math.max(ServerClient.lastClientId, buffer.getInt());
+            int queued = buffer.getInt();
+            for (int rank = 0; rank < queued; rank++) {
+                queueRanks.put(getName(buffer), rank);
+            }
+            int rooms = buffer.getShort() & 0xFFFF;
+            for (int index = 0; index < rooms; index++) {
+                RecoveredRoom room = new RecoveredRoom(buffer.getShort() & 0xFFFF);
+                room.winnerId = buffer.getInt();
+                room.streak = buffer.getInt();
+                streaks.add(room);
+                if (buffer.get() == 1) {
+                    SnapshotGame game = new SnapshotGame(room.roomId, getName(buffer), getName(buffer),
+                            buffer.getInt(), buffer.get());
+                    unfinished.add(game);
+                    games.put(game.playerXName, game);
+                    games.put(game.playerOName, game);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            ServerLog.log(LogLevel.WARNING, "Skipped corrupt snapshot %s", path);
+            queueRanks.clear();
+            games.clear();
+            streaks.clear();
+            unfinished.clear();
+            return;
+        }
+        restoreDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RESTORE_WINDOW);
+        ServerLog.log(LogLevel.INFO, "Loaded snapshot %s: %d queued players, %d unfinished games (%.3f ms)", path,
+                queueRanks.size(), unfinished.size(), (System.nanoTime() - startTime) / 1e6);
+    }
+
+    /**
+     * Adds a game interrupted by a crash, recovered from the journal (see {@link ServerJournal#restore(ServerLobby)}),
+     * to the unfinished games to hold for their players, unless the snapshot already holds a game for its room (the
+     * snapshot, written when the server stopped, is as recent as the journal). Opens the {@link #RESTORE_WINDOW}.
+     * <p>
+     * Must be called before {@link #restore(ServerLobby)}.
+     *
+     * @param game The interrupted game.
+     */
+    static synchronized void hold(SnapshotGame game) {
+        for (SnapshotGame held : unfinished) {
+            if (held.roomId == game.roomId) {
+                return;
+            }
+        }
+        unfinished.add(game);
+        games.put(game.playerXName, game);
+        games.put(game.playerOName, game);
+        restoreDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RESTORE_WINDOW);
+    }
+
+    /**
+     * Restores the loaded streaks into the rooms (see {@link ServerGame#restore(RecoveredRoom)}), and holds each
+     * unfinished game in its room until both of its players reconnect or {@link #RESTORE_WINDOW} passes; see
+     * {@link ServerGame#reserve(SnapshotGame)}.
+     *
+     * @param lobby The lobby holding the rooms.
+     */
+    static void restore(ServerLobby lobby) {
+        ServerSnapshot.lobby = lobby;
+        for (RecoveredRoom recoveredRoom : streaks) {
+            ServerGame room = getRoom(recoveredRoom.roomId);
+            if (room != null && recoveredRoom.winnerId != 0 && recoveredRoom.streak > 0) {
+                room.execute(() -> room.restore(recoveredRoom));
+            }
+        }
+        for (SnapshotGame game : unfinished) {
+            ServerGame room = getRoom(game.roomId);
+            if (room == null) {
+                continue;
+            }
+            room.execute(() -> room.reserve(game));
+            CompletableFuture.delayedExecutor(RESTORE_WINDOW, TimeUnit.SECONDS)
+                    .execute(() -> room.execute(() -> room.releaseReservation(game)));
+        }
+        streaks.clear();
+        unfinished.clear();
+    }
+
+    /**
+     * Puts a player who reconnected after a restart back where they were: in their unfinished game, if it is still
+     * held (see {@link ServerGame#seatRestored(ServerClient, SnapshotGame)}), or otherwise in the queue, ahead of the
+     * clients that were not queued before the restart; see {@link ServerLobby#restorePosition(ServerClient, int)}.
+     * A client already seated in a room that is still waiting for players (they can be matched before their name
+     * arrives) is taken out of it first.
+     * <p>
+     * Called on the client's reader thread when they identify themselves; see
+     * {@link Server#receiveName(ServerClient, String)}. Does nothing once {@link #RESTORE_WINDOW} has passed, or if
+     * the client's game already started.
+     *
+     * @param client The client who identified themselves.
+     * @param name   The name of the player.
+     */
+    static synchronized void identified(ServerClient client, String name) {
+        if (queueRanks.isEmpty() && games.isEmpty()) {
+            return;
+        }
+        if (System.nanoTime() - restoreDeadline > 0) {
+            queueRanks.clear();
+            games.clear();
+            return;
+        }
+
+        SnapshotGame game = games.remove(name);
+        Integer rank = queueRanks.remove(name);
+        if (game == null && rank == null) {
+            return;
+        }
+        Runnable putBack = () -> {
+            ServerGame room = game == null ? null : getRoom(game.roomId);
+            if (room != null) {
+                room.execute(() -> room.seatRestored(client, game));
+            } else if (rank != null) {
+                lobby.restorePosition(client, rank);
+            } else {
+                lobby.requeueFront(List.of(client));
+            }
+        };
+
+        if (lobby.leave(client)) {
+            putBack.run();
+            return;
+        }
+        // the client was seated in the meantime if they are not queued
+        ServerGame seated = client.game;
+        if (seated != null) {
+            seated.execute(() -> {
+                if (seated.state == GameState.WAITING_FOR_PLAYERS && seated.leave(client)) {
+                    putBack.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the queue order (of the players who identified themselves; see {@link ServerClient#playerName}), the
+     * rooms' streaks and any unfinished games to the snapshot file, which is atomically replaced; see
+     * {@link #load(String)}. Players waiting alone in a room are put at the front of the queue, and so are the
+     * players of an unfinished game that cannot be restored because one of them never identified themselves.
+     * <p>
+     * Must only be called once the lobby and room threads have stopped; see {@link Server#shutdown()}.
+     *
+     * @param lobby The lobby holding the queue and rooms.
+     */
+    static void write(ServerLobby lobby) {
+        if (path == null) {
+            return;
+        }
+
+        ArrayList<String> queue = new ArrayList<>();
+        ArrayList<ServerGame> playing = new ArrayList<>();
+        for (ServerGame room : lobby.rooms) {
+            if (room.state == GameState.PLAYING && room.playerX != null && room.playerO != null
+                    && room.playerX.playerName != null && room.playerO.playerName != null) {
+                playing.add(room);
+                continue;
+            }
+            for (ServerClient client : new ServerClient[]{room.playerX, room.playerO}) {
+                if (client != null && client.game == room && client.playerName != null
+                        && client.state == ClientState.CONNECTED) {
+                    queue.add(client.playerName);
+                }
+            }
+        }
+        lobby.lock.lock();
+        try {
+            lobby.clients.forEachBetween(0, lobby.clients.size(), (client, index) -> {
+                if (client.playerName != null && client.state == ClientState.CONNECTED) {
+                    queue.add(client.playerName);
+                }
+            });
+        } finally {
+            lobby.lock.unlock();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(13 + queue.size() * 17 + lobby.rooms.length * 55);
+        buffer.putInt(MAGIC).put(VERSION).putInt(ServerClient.lastClientId);
+        buffer.putInt(queue.size());
+        for (String name : queue) {
+            putName(buffer, name);
+        }
+        buffer.putShort((short) lobby.rooms.length);
+        for (ServerGame room : lobby.rooms) {
+            buffer.putShort((short) room.roomId).putInt(room.lastWinnerId).putInt(room.streak);
+            if (!playing.contains(room)) {
+                buffer.put((byte) 0);
+                continue;
+            }
+            buffer.put((byte) 1);
+            putName(buffer, room.playerX.playerName);
+            putName(buffer, room.playerO.playerName);
+            buffer.putInt(room.board.pack()).put((byte) room.turn);
+        }
+        buffer.flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            ServerLog.log(LogLevel.ERROR, "Failed to write the snapshot: %s", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ServerLog.log(LogLevel.ERROR, "Failed to write the snapshot: %s", e.getMessage());
+            return;
+        }
+        ServerLog.log(LogLevel.INFO, "Wrote snapshot %s: %d queued players, %d unfinished games (%d bytes)", path,
+                queue.size(), playing.size(), buffer.limit());
+    }
+
+    /**
+     * @param roomId The ID of a room.
+     * @return The room with the passed {@code roomId}, or {@code null} if the server has fewer rooms now.
+     */
+    static ServerGame getRoom(int roomId) {
+        return roomId >= 1 && roomId <= lobby.rooms.length ? lobby.rooms[roomId - 1] : null;
+    }
+
+    /**
+     * @return The name at the position of the passed {@code buffer}, moving past it.
+     */
+    static String getName(ByteBuffer buffer) {
+        byte[] name = new byte[buffer.get() & 0xFF];
+        buffer.get(name);
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Puts the passed {@code name} at the position of the passed {@code buffer}, moving past it.
+     */
+    static void putName(ByteBuffer buffer, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        buffer.put((byte) bytes.length).put(bytes);
+    }
+}
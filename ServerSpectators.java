@@ -0,0 +1,96 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+class ServerSpectators {
+    static ServerLobby lobby = null;
+
+    static volatile boolean running = false;
+    static Thread broadcastThread = null;
+
+    /**
+     * Starts a thread (see {@link Server#startThread(Runnable)}) that sends the state of every room to the queued
+     * clients watching it; see {@link #broadcast()}.
+     *
+     * @param lobby The lobby whose rooms can be watched.
+     */
+    static void start(ServerLobby lobby) {
+        ServerSpectators.lobby = lobby;
+        running = true;
+        broadcastThread = Server.startThread(() -> {
+            while (running) {
+                LockSupport.park();
+                broadcast();
+            }
+        });
+    }
+
+    /**
+     * Wakes up the broadcast thread; never blocks. Called by rooms whenever they publish a new state (see
+     * {@link ServerGame#publishState(byte)}), and by clients that have caught up after lagging behind.
+     */
+    static void wake() {
+        Thread broadcastThread = ServerSpectators.broadcastThread;
+        if (broadcastThread != null) {
+            LockSupport.unpark(broadcastThread);
+        }
+    }
+
+    /**
+     * Sends the latest state of each room (see {@link ServerGame#spectatorFrame}) to every client watching it that
+     * has not been sent it yet. Runs on the broadcast thread.
+     * <p>
+     * The state is encoded once by the room into a shared read-only buffer, which is written as it is to every
+     * spectator; see {@link ServerClient#sendShared(ByteBuffer)}. Clients that are seated in a room are skipped until
+     * they are back in the queue, and so are clients that have not taken everything sent to them yet; both are sent
+     * the latest state once they can take it, skipping any states they missed in between. The players of a room
+     * never wait on its spectators.
+     */
+    static void broadcast() {
+        for (ServerGame room : lobby.rooms) {
+            ByteBuffer frame = room.spectatorFrame;
+            if (frame == null) {
+                continue;
+            }
+            for (ServerClient client : room.spectators) {
+                if (client.watchedFrame != frame && client.game == null && client.sendShared(frame)) {
+                    client.watchedFrame = frame;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the client from the spectators of the room they were watching (if any) to those of the passed
+     * {@code room}, and has the passed {@code room} publish its current state; see
+     * {@link ServerGame#publishState(byte)}.
+     *
+     * @param client The client to move.
+     * @param room   The room to watch, or {@code null} to stop watching.
+     */
+    static synchronized void watch(ServerClient client, ServerGame room) {
+        ServerGame watching = client.watching;
+        if (watching == room) {
+            return;
+        }
+        if (watching != null) {
+            watching.spectators.remove(client);
+        }
+        client.watching = room;
+        client.watchedFrame = null;
+        if (room != null) {
+            room.spectators.add(client);
+            room.execute(() -> room.publishState(room.spectatorState));
+        }
+    }
+
+    /**
+     * Stops the broadcast thread.
+     */
+    static void shutdown() {
+        if (broadcastThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(broadcastThread);
+    }
+}
@@ -0,0 +1,26 @@
+class SnapshotGame {
+    final int roomId;
+    final String playerXName;
+    final String playerOName;
+    final int board;
+    final int turn;
+
+    /**
+     * A game that was still in progress when the server last stopped (see {@link ServerSnapshot}) or died (see
+     * {@link ServerJournal#interruptedGame(RecoveredRoom)}), held in its room until both players reconnect; see
+     * {@link ServerGame#reserve(SnapshotGame)}.
+     *
+     * @param roomId      The ID of the room the game was played in.
+     * @param playerXName The name of the player playing X.
+     * @param playerOName The name of the player playing O.
+     * @param board       The board, packed; see {@link Bitboard#pack()}.
+     * @param turn        The number of moves played.
+     */
+    SnapshotGame(int roomId, String playerXName, String playerOName, int board, int turn) {
+        this.roomId = roomId;
+        this.playerXName = playerXName;
+        this.playerOName = playerOName;
+        this.board = board;
+        this.turn = turn;
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+// JMH only accepts benchmarks in a named package, and named packages can't see the game classes in the unnamed
+// package, so the benchmarks (see the benchmarks package) look these fixtures up by name instead.
+public class BenchmarkFixtures {
+    static final long SEED = 42;
+
+    // a tie: X O X / X O O / O X X
+    static final int[] TIE_SQUARES = {0, 1, 2, 4, 3, 5, 7, 6, 8};
+
+    // the lobbies created by the fixtures of the current trial; see tearDown()
+    static final ArrayList<ServerLobby> lobbies = new ArrayList<>();
+
+    static {
+        // the game classes log to the console; keep that (and its cost) out of the benchmark output
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * @return A fully connected client without a writer thread, whose outgoing buffer is emptied into nowhere on the
+     * calling thread whenever it is flushed.
+     */
+    static ServerClient newClient() {
+        ServerClient client = new ServerClient(null) {
+            @Override
+            void flushMessages() {
+                synchronized (outboundLock) {
+                    outbound.clear();
+                }
+            }
+        };
+        client.clientId = ++ServerClient.lastClientId;
+        client.state = ClientState.CONNECTED;
+        client.out = OutputStream.nullOutputStream();
+        return client;
+    }
+
+    /**
+     * @param rooms The number of rooms.
+     * @return A lobby without a matchmaking thread, tick thread or room threads; fixtures call
+     * {@link ServerLobby#matchPlayers()}, {@link ServerLobby#sendQueueUpdates()} and {@link ServerGame#runCommands()}
+     * themselves. Shut down again by {@link #tearDown()}.
+     */
+    static ServerLobby newLobby(int rooms) {
+        ServerLobby lobby = new ServerLobby(rooms);
+        lobbies.add(lobby);
+        stop(lobby);
+        for (ServerGame room : lobby.rooms) {
+            room.random.setSeed(SEED);
+        }
+        return lobby;
+    }
+
+    /**
+     * Shuts down every lobby created by the fixtures since the last call and waits for all of their threads, so that
+     * none of them outlives the trial that created it; called by the benchmarks after each trial.
+     */
+    public static void tearDown() {
+        for (ServerLobby lobby : lobbies) {
+            stop(lobby);
+        }
+        lobbies.clear();
+    }
+
+    /**
+     * Shuts down the passed {@code lobby} and waits for its matchmaking thread, tick thread and room threads to end,
+     * so that none of them runs alongside a benchmark (the tick thread sends one last round of queue updates when
+     * woken up; see {@link ServerLobby#shutdown()}).
+     *
+     * @param lobby The lobby to shut down.
+     */
+    static void stop(ServerLobby lobby) {
+        lobby.shutdown();
+        try {
+            lobby.matchThread.join();
+            lobby.tickThread.join();
+            for (ServerGame room : lobby.rooms) {
+                room.thread.join();
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Offers queued clients to the lobby's rooms and seats them right away, on the calling thread.
+     *
+     * @param lobby The lobby to match players in.
+     */
+    static void matchPlayers(ServerLobby lobby) {
+        lobby.matchPlayers();
+        for (ServerGame room : lobby.rooms) {
+            room.runCommands();
+        }
+    }
+
+    /**
+     * @return 1024 boards from random (seeded) games, each stopped after a random number of moves.
+     */
+    static Bitboard[] randomBoards() {
+        Random random = new Random(SEED);
+        Bitboard[] boards = new Bitboard[1024];
+        for (int index = 0; index < boards.length; index++) {
+            Bitboard board = new Bitboard();
+            int moves = random.nextInt(10);
+            for (int move = 0; move < moves; move++) {
+                int square;
+                do {
+                    square = random.nextInt(9);
+                } while (!board.isEmpty(square));
+                board.play(move % 2 == 0 ? 'X' : 'O', square);
+            }
+            boards[index] = board;
+        }
+        return boards;
+    }
+
+    /**
+     * @return {@link ServerGame#checkWin(char)} over {@link #randomBoards()}.
+     */
+    public static IntSupplier checkWin() {
+        ServerGame room = newLobby(1).rooms[0];
+        Bitboard[] boards = randomBoards();
+        int[] next = {0};
+        return () -> {
+            room.board = boards[next[0]++ & 1023];
+            return room.checkWin('X') ? 1 : 0;
+        };
+    }
+
+    /**
+     * @return {@link ServerGame#checkTie()} over {@link #randomBoards()}.
+     */
+    public static IntSupplier checkTie() {
+        ServerGame room = newLobby(1).rooms[0];
+        Bitboard[] boards = randomBoards();
+        int[] next = {0};
+        return () -> {
+            room.board = boards[next[0]++ & 1023];
+            return room.checkTie() ? 1 : 0;
+        };
+    }
+
+    /**
+     * @return One {@link ServerGame#playTurn(ServerClient, int)} per call, playing {@link #TIE_SQUARES} over and
+     * over; every ninth call ends the game, and the next one seats the players again through the lobby (running the
+     * room's commands on the calling thread).
+     */
+    public static IntSupplier playTurn() {
+        ServerLobby lobby = newLobby(1);
+        ServerGame room = lobby.rooms[0];
+        lobby.join(newClient());
+        lobby.join(newClient());
+        matchPlayers(lobby);
+        return () -> {
+            if (room.state != GameState.PLAYING) {
+                matchPlayers(lobby);
+            }
+            room.playTurn(room.getTurnPlayer(), TIE_SQUARES[room.turn]);
+            return room.turn;
+        };
+    }
+
+    /**
+     * @param size The number of queued clients.
+     * @return What {@link ServerGame#endGame(ServerClient)} and {@link ServerLobby#matchPlayers()} do to the queue
+     * when a loser goes to the back and the front client is seated: one removal from the middle of the queue, one
+     * removal from the front and two additions to the back.
+     */
+    public static IntSupplier queueReorder(int size) {
+        ServerQueue queue = new ServerQueue();
+        ServerClient[] clients = new ServerClient[size];
+        for (int index = 0; index < size; index++) {
+            clients[index] = newClient();
+            queue.add(clients[index]);
+        }
+        Random random = new Random(SEED);
+        return () -> {
+            ServerClient client = clients[random.nextInt(size)];
+            int position = queue.remove(client);
+            queue.add(client);
+            queue.add(queue.poll());
+            return position;
+        };
+    }
+
+    /**
+     * @param size The number of queued clients.
+     * @return One tick of {@link ServerLobby#sendQueueUpdates()} after a random queued client left and joined the back
+     * of the queue again, as a loser does; only the clients behind the leaver (up to position 255) are looked at, and
+     * only those whose position changed are sent it.
+     */
+    public static IntSupplier sendQueueUpdates(int size) {
+        ServerLobby lobby = newLobby(1);
+        ServerGame room = lobby.rooms[0];
+        lobby.join(newClient());
+        lobby.join(newClient());
+        matchPlayers(lobby);
+        for (int index = 0; index < size; index++) {
+            lobby.join(newClient());
+        }
+        lobby.sendQueueUpdates();
+        Random random = new Random(SEED);
+        return () -> {
+            ServerClient client = lobby.clients.get(random.nextInt(size));
+            lobby.leave(client);
+            lobby.requeue(client);
+            lobby.sendQueueUpdates();
+            return room.turn;
+        };
+    }
+
+    /**
+     * @return One {@link ClientDecoder} pass per call over a recorded game (start, boards, turns, queue position and
+     * result messages; 17 messages in 67 bytes), as if it had arrived in a single read.
+     */
+    public static IntSupplier clientDecode() {
+        ByteBuffer game = ByteBuffer.wrap(new byte[]{
+                'w', 'x', ' ', ' ', ' ', ' ', ' ', ' ', ' ', ' ', ' ', 1,
+                'X', ' ', ' ', ' ', ' ', ' ', ' ', ' ', ' ', 0,
+                'X', 'O', ' ', ' ', ' ', ' ', ' ', ' ', ' ', 1,
+                'I', 'Q', 3,
+                'X', 'O', 'X', ' ', 'O', ' ', ' ', ' ', ' ', 0,
+                'X', 'O', 'X', ' ', 'O', ' ', ' ', 'O', ' ', 'L',
+                'X', 'O', 'X', 'X', 'O', 'O', 'O', 'X', 'X', 'T',
+                'W', 2
+        });
+        ClientGame clientGame = new ClientGame() {
+            @Override
+            void messageReceived() {
+            }
+
+            @Override
+            void waitingForOpponent() {
+            }
+
+            @Override
+            void inQueue(int ahead, boolean orMore) {
+            }
+
+            @Override
+            void gameStarting(char role) {
+                this.role = role;
+            }
+
+            @Override
+            void boardStateChanged(char[] board) {
+            }
+
+            @Override
+            void nextTurn(boolean yourTurn) {
+            }
+
+            @Override
+            void invalidMove() {
+            }
+
+            @Override
+            void gameWon(int streak) {
+            }
+
+            @Override
+            void gameLost(boolean tie) {
+            }
+        };
+        ClientDecoder decoder = new ClientDecoder(clientGame);
+        return () -> decoder.decode(game.clear()) ? clientGame.role : 0;
+    }
+
+    /**
+     * @return One {@link ServerDecoder} pass per call from a queued client over every valid byte other than 'Q' and
+     * 'P' (11 messages), as if they had arrived in a single read; the client is not rate limited.
+     */
+    public static IntSupplier serverDecode() {
+        ServerClient client = newClient();
+        client.decoder.limiter = new RateLimiter(Integer.MAX_VALUE, 1, 1);
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 'Y', 'N'});
+        return () -> client.decoder.decode(bytes.clear()) ? 1 : 0;
+    }
+}
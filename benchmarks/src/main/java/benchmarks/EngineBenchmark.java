@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Game engine hot paths: win and tie detection, and whole turns (including logging, frame encoding and writes to a
+ * discarding client).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class EngineBenchmark {
+    IntSupplier checkWin;
+    IntSupplier checkTie;
+    IntSupplier playTurn;
+
+    @Setup
+    public void setup() {
+        checkWin = Fixtures.get("checkWin");
+        checkTie = Fixtures.get("checkTie");
+        playTurn = Fixtures.get("playTurn");
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.tearDown();
+    }
+
+    @Benchmark
+    public int checkWin() {
+        return checkWin.getAsInt();
+    }
+
+    @Benchmark
+    public int checkTie() {
+        return checkTie.getAsInt();
+    }
+
+    @Benchmark
+    public int playTurn() {
+        return playTurn.getAsInt();
+    }
+}
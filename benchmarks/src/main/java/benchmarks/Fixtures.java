@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.IntSupplier;
+
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * Looks up a fixture from the unnamed-package {@code BenchmarkFixtures} class by name.
+     *
+     * @param name The name of the fixture method.
+     * @param args The int arguments of the fixture method, if any.
+     * @return The fixture; each call runs one operation and returns a value for the benchmark to consume.
+     */
+    static IntSupplier get(String name, int... args) {
+        try {
+            Class<?>[] parameterTypes = new Class<?>[args.length];
+            Object[] parameters = new Object[args.length];
+            for (int index = 0; index < args.length; index++) {
+                parameterTypes[index] = int.class;
+                parameters[index] = args[index];
+            }
+            return (IntSupplier) Class.forName("BenchmarkFixtures").getMethod(name, parameterTypes)
+                    .invoke(null, parameters);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                 | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create fixture " + name, e);
+        }
+    }
+
+    /**
+     * Shuts down the lobbies created by the fixtures, and waits for their threads; see the unnamed-package
+     * {@code BenchmarkFixtures#tearDown()}.
+     */
+    static void tearDown() {
+        try {
+            Class.forName("BenchmarkFixtures").getMethod("tearDown").invoke(null);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                 | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to tear down fixtures", e);
+        }
+    }
+}
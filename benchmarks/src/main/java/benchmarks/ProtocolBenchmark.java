@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Protocol decoding hot paths: a batch of messages per call, decoded as if they had arrived in a single read, on the
+ * client side and on the server side.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class ProtocolBenchmark {
+    IntSupplier clientDecode;
+    IntSupplier serverDecode;
+
+    @Setup
+    public void setup() {
+        clientDecode = Fixtures.get("clientDecode");
+        serverDecode = Fixtures.get("serverDecode");
+    }
+
+    @Benchmark
+    public int clientDecode() {
+        return clientDecode.getAsInt();
+    }
+
+    @Benchmark
+    public int serverDecode() {
+        return serverDecode.getAsInt();
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Waiting queue hot paths: the reordering done when a game ends and the next one starts, and sending every queued
+ * client their position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class QueueBenchmark {
+    @Param({"100", "10000"})
+    int queueSize;
+
+    IntSupplier queueReorder;
+    IntSupplier sendQueueUpdates;
+
+    @Setup
+    public void setup() {
+        queueReorder = Fixtures.get("queueReorder", queueSize);
+        sendQueueUpdates = Fixtures.get("sendQueueUpdates", queueSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.tearDown();
+    }
+
+    @Benchmark
+    public int queueReorder() {
+        return queueReorder.getAsInt();
+    }
+
+    @Benchmark
+    public int sendQueueUpdates() {
+        return sendQueueUpdates.getAsInt();
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitboardTest {
+    // a tie: X O X / X O O / O X X
+    static final int[] TIE_SQUARES = {0, 1, 2, 4, 3, 5, 7, 6, 8};
+
+    @BeforeAll
+    static void buildTable() {
+        PerfectPlay.build();
+    }
+
+    /**
+     * Every row, column and diagonal wins for whichever role holds it, and only for that role.
+     */
+    @Test
+    void everyLineWins() {
+        for (int line : Bitboard.LINES) {
+            for (char role : new char[]{'X', 'O'}) {
+                Bitboard board = new Bitboard();
+                for (int square = 0; square < 9; square++) {
+                    if ((line >> square & 1) != 0) {
+                        assertFalse(board.isWin(role));
+                        board.play(role, square);
+                    }
+                }
+                assertTrue(board.isWin(role));
+                assertFalse(board.isWin(role == 'X' ? 'O' : 'X'));
+            }
+        }
+    }
+
+    /**
+     * A mask wins exactly when it holds one of the lines, over all 512 masks.
+     */
+    @Test
+    void winsTableMatchesLines() {
+        for (int mask = 0; mask < Bitboard.WINS.length; mask++) {
+            boolean win = false;
+            for (int line : Bitboard.LINES) {
+                win |= (mask & line) == line;
+            }
+            assertEquals(win, Bitboard.WINS[mask], "mask " + Integer.toBinaryString(mask));
+        }
+    }
+
+    /**
+     * A full board without a line is a tie, and survives packing and unpacking.
+     */
+    @Test
+    void tie() {
+        Bitboard board = new Bitboard();
+        for (int move = 0; move < TIE_SQUARES.length; move++) {
+            assertFalse(board.isFull());
+            board.play(move % 2 == 0 ? 'X' : 'O', TIE_SQUARES[move]);
+        }
+        assertTrue(board.isFull());
+        assertFalse(board.isWin('X'));
+        assertFalse(board.isWin('O'));
+        assertTrue(PerfectPlay.isOver(board.x, board.o));
+
+        byte[] bytes = new byte[9];
+        Bitboard unpacked = new Bitboard();
+        unpacked.unpack(board.pack());
+        unpacked.populateBytes(bytes, 0);
+        assertEquals("XOXXOOOXX", new String(bytes));
+    }
+
+    /**
+     * The bot takes a win it is offered, and otherwise blocks the other player's line.
+     */
+    @Test
+    void perfectPlayWinsAndBlocks() {
+        Bitboard board = new Bitboard();
+        board.play('X', 0);
+        board.play('O', 3);
+        board.play('X', 1);
+        board.play('O', 4);
+        assertEquals(2, PerfectPlay.bestMove(board)); // X completes the top row
+
+        board.clear();
+        board.play('X', 0);
+        board.play('O', 4);
+        board.play('X', 1);
+        assertEquals(2, PerfectPlay.bestMove(board)); // O blocks the top row
+    }
+
+    /**
+     * The bot never loses, whatever the other player does: every game against every sequence of moves ends in a tie
+     * or a win for the bot, playing either role.
+     */
+    @Test
+    void perfectPlayNeverLoses() {
+        assertNeverLoses(new Bitboard(), 'X', 'X');
+        assertNeverLoses(new Bitboard(), 'O', 'X');
+    }
+
+    /**
+     * Plays out every game from the passed {@code board} in which the bot plays the passed {@code bot} role, and the
+     * other player tries every empty square.
+     */
+    static void assertNeverLoses(Bitboard board, char bot, char toMove) {
+        char other = bot == 'X' ? 'O' : 'X';
+        if (board.isWin(bot) || board.isFull()) {
+            assertFalse(board.isWin(other));
+            return;
+        }
+        assertFalse(board.isWin(other), "lost " + Integer.toBinaryString(board.pack()));
+
+        int packed = board.pack();
+        if (toMove == bot) {
+            int square = PerfectPlay.bestMove(board);
+            assertTrue(square >= 0 && board.isEmpty(square));
+            board.play(bot, square);
+            assertNeverLoses(board, bot, other);
+        } else {
+            for (int square = 0; square < 9; square++) {
+                if (board.isEmpty(square)) {
+                    board.play(other, square);
+                    assertNeverLoses(board, bot, bot);
+                    board.unpack(packed);
+                }
+            }
+        }
+        board.unpack(packed);
+    }
+}
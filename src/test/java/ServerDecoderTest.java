@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerDecoderTest {
+    // version 1 messages: a move, a name, a play again reply and a quit
+    static final byte[][] VERSION_1 = {{5}, {'P', 3, 'a', 'b', 'c'}, {'Y'}, {'Q'}};
+
+    // a hello switching to version 2, then version 2 frames: a move, a name, a watch, a resync, a frame of an unknown
+    // type with a long payload, and a quit
+    static final byte[][] VERSION_2 = {
+            {Protocol.HELLO, 2},
+            {Protocol.MOVE, 1, 7},
+            {Protocol.IDENTIFY, 4, 'n', 'a', 'm', 'e'},
+            {Protocol.WATCH, 1, 3},
+            {Protocol.RESYNC, 0},
+            {'z', 20, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20},
+            {Protocol.QUIT, 0}
+    };
+
+    /**
+     * A decoder that records the messages it is handed instead of passing them to the server, switching to version 2
+     * on a hello as {@link Server#receiveHello(ServerClient, int)} would; not rate limited.
+     */
+    static class RecordingDecoder extends ServerDecoder {
+        final List<byte[]> messages = new ArrayList<>();
+
+        RecordingDecoder() {
+            super(new ServerClient(null));
+            limiter = new RateLimiter(Integer.MAX_VALUE, 1, 1);
+        }
+
+        @Override
+        boolean handleMessage(ByteBuffer frames, int offset, int length) {
+            byte[] message = new byte[length];
+            frames.get(offset, message);
+            messages.add(message);
+            if (version == 1 && firstMessage && message[0] == Protocol.HELLO) {
+                version = message[1];
+            }
+            firstMessage = false;
+            return true;
+        }
+    }
+
+    @Test
+    void version1SplitAtEveryOffset() {
+        assertSplits(VERSION_1);
+    }
+
+    @Test
+    void version2SplitAtEveryOffset() {
+        assertSplits(VERSION_2);
+    }
+
+    @Test
+    void version1OneByteAtATime() {
+        assertOneByteAtATime(VERSION_1);
+    }
+
+    @Test
+    void version2OneByteAtATime() {
+        assertOneByteAtATime(VERSION_2);
+    }
+
+    /**
+     * Splits the passed {@code messages} into three reads at every pair of byte offsets (including empty reads), and
+     * checks that each message is handled once and whole, with nothing left over.
+     */
+    static void assertSplits(byte[][] messages) {
+        byte[] bytes = concat(messages);
+        for (int first = 0; first <= bytes.length; first++) {
+            for (int second = first; second <= bytes.length; second++) {
+                RecordingDecoder decoder = new RecordingDecoder();
+                assertTrue(decoder.decode(ByteBuffer.wrap(bytes, 0, first)));
+                assertTrue(decoder.decode(ByteBuffer.wrap(bytes, first, second - first)));
+                assertTrue(decoder.decode(ByteBuffer.wrap(bytes, second, bytes.length - second)));
+                assertMessages(messages, decoder, "split at " + first + " and " + second);
+            }
+        }
+    }
+
+    /**
+     * Feeds the passed {@code messages} to the decoder one byte per read.
+     */
+    static void assertOneByteAtATime(byte[][] messages) {
+        byte[] bytes = concat(messages);
+        RecordingDecoder decoder = new RecordingDecoder();
+        for (int index = 0; index < bytes.length; index++) {
+            assertTrue(decoder.decode(ByteBuffer.wrap(bytes, index, 1)));
+        }
+        assertMessages(messages, decoder, "one byte at a time");
+    }
+
+    /**
+     * Checks that the passed {@code decoder} handled exactly the passed {@code messages}, and kept no bytes back.
+     */
+    static void assertMessages(byte[][] messages, RecordingDecoder decoder, String reads) {
+        assertEquals(messages.length, decoder.messages.size(), reads);
+        for (int index = 0; index < messages.length; index++) {
+            assertEquals(Arrays.toString(messages[index]), Arrays.toString(decoder.messages.get(index)), reads);
+        }
+        assertEquals(0, decoder.buffer.position(), reads);
+    }
+
+    /**
+     * @return The passed {@code messages} back to back, as they would arrive on the socket.
+     */
+    static byte[] concat(byte[][] messages) {
+        ByteBuffer bytes = ByteBuffer.allocate(Arrays.stream(messages).mapToInt(message -> message.length).sum());
+        for (byte[] message : messages) {
+            bytes.put(message);
+        }
+        return bytes.array();
+    }
+}
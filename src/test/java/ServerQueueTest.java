@@ -0,0 +1,129 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ServerQueueTest {
+    /**
+     * Adds and polls more clients than the ring holds, without ever filling it, so the tickets wrap around its end
+     * while the queue stays small; the ranks must still count from the head.
+     */
+    @Test
+    void ranksAfterWrapAround() {
+        ServerQueue queue = new ServerQueue();
+        ArrayList<ServerClient> expected = new ArrayList<>();
+        for (int round = 0; round < 5 * ServerQueue.MIN_CAPACITY; round++) {
+            ServerClient client = new ServerClient(null);
+            assertEquals(expected.size(), queue.add(client));
+            expected.add(client);
+            if (expected.size() == ServerQueue.MIN_CAPACITY / 2) {
+                assertSame(expected.remove(0), queue.poll());
+            }
+            assertRanks(expected, queue);
+        }
+        assertEquals(ServerQueue.MIN_CAPACITY, queue.slots.length);
+    }
+
+    /**
+     * Removes clients from the middle of a queue that wrapped around the ring, and puts clients back at the front,
+     * below ticket 0.
+     */
+    @Test
+    void removeAndAddFirstAfterWrapAround() {
+        ServerQueue queue = new ServerQueue();
+        ArrayList<ServerClient> expected = new ArrayList<>();
+        for (int index = 0; index < ServerQueue.MIN_CAPACITY; index++) {
+            ServerClient client = new ServerClient(null);
+            queue.add(client);
+            expected.add(client);
+        }
+        for (int index = 0; index < ServerQueue.MIN_CAPACITY - 4; index++) {
+            assertSame(expected.remove(0), queue.poll());
+        }
+        for (int index = 0; index < 8; index++) {
+            ServerClient client = new ServerClient(null);
+            queue.add(client);
+            expected.add(client);
+        }
+        assertRanks(expected, queue);
+
+        assertEquals(5, queue.remove(expected.remove(5)));
+        assertEquals(1, queue.remove(expected.remove(1)));
+        assertEquals(-1, queue.remove(new ServerClient(null)));
+        assertRanks(expected, queue);
+
+        for (int index = 0; index < 3; index++) {
+            ServerClient client = new ServerClient(null);
+            queue.addFirst(client);
+            expected.add(0, client);
+        }
+        assertRanks(expected, queue);
+
+        while (!expected.isEmpty()) {
+            assertSame(expected.remove(0), queue.poll());
+            assertRanks(expected, queue);
+        }
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Runs random adds (at either end), polls and removals, growing and shrinking the ring, against a list.
+     */
+    @Test
+    void randomOperations() {
+        Random random = new Random(42);
+        ServerQueue queue = new ServerQueue();
+        ArrayList<ServerClient> expected = new ArrayList<>();
+        for (int operation = 0; operation < 20_000; operation++) {
+            int choice = random.nextInt(expected.size() > 200 ? 6 : 4);
+            if (choice == 0) {
+                ServerClient client = new ServerClient(null);
+                assertEquals(expected.size(), queue.add(client));
+                expected.add(client);
+            } else if (choice == 1) {
+                ServerClient client = new ServerClient(null);
+                queue.addFirst(client);
+                expected.add(0, client);
+            } else if (expected.isEmpty()) {
+                assertNull(queue.poll());
+            } else if (choice % 2 == 0) {
+                assertSame(expected.remove(0), queue.poll());
+            } else {
+                int position = random.nextInt(expected.size());
+                assertEquals(position, queue.remove(expected.remove(position)));
+            }
+            if (operation % 97 == 0) {
+                assertRanks(expected, queue);
+            }
+        }
+        assertRanks(expected, queue);
+    }
+
+    /**
+     * Checks the size of the passed {@code queue}, and the rank lookups both ways and the walk over it, against the
+     * passed {@code expected} clients.
+     */
+    static void assertRanks(ArrayList<ServerClient> expected, ServerQueue queue) {
+        assertEquals(expected.size(), queue.size());
+        for (int position = 0; position < expected.size(); position++) {
+            assertEquals(position, queue.indexOf(expected.get(position)));
+            assertSame(expected.get(position), queue.get(position));
+        }
+
+        ArrayList<ServerClient> walked = new ArrayList<>();
+        queue.forEachBetween(0, Integer.MAX_VALUE, (client, position) -> {
+            assertEquals(walked.size(), position);
+            walked.add(client);
+        });
+        assertEquals(expected, walked);
+
+        int from = expected.size() / 3;
+        ArrayList<ServerClient> between = new ArrayList<>();
+        queue.forEachBetween(from, from + 5, (client, position) -> between.add(client));
+        assertEquals(expected.subList(from, Math.min(from + 5, expected.size())), between);
+    }
+}